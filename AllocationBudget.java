@@ -0,0 +1,191 @@
+package com.yao.memorytrain;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Random;
+
+// 热路径的内存分配预算检查，纯Java，在普通JVM上运行：
+// 每回合的翻牌判定（没配上、配上、无尽模式补牌）、计时器和点击次数的文字拼接、操作记录的写入。
+// 每项先预热让JIT编译好，再用线程分配计数器统计平均每次操作分配的字节数，超过预算时返回非0，
+// 可以直接放进构建脚本里，哪次改动在点击路径上引入了分配就会失败。
+// 只驱动BoardEngine、HudText的拼字和ReplayLog.Writer，不经过Activity的点击监听。
+// 经过点击监听、调度器和CardView的整条路径，以及计时器跳秒，由test/ClickPathAllocationTest在Robolectric里检查。
+// 用法：java com.yao.memorytrain.AllocationBudget [-n 每项测量的操作数]
+public final class AllocationBudget {
+    private static final int[][] LEVELS = {{3, 2}, {4, 3}, {5, 4}, {6, 5}, {10, 10}, {20, 20}};
+    private static final int WARMUP_OPS = 200_000;
+    // 稳态下应该完全不分配。计数器本身和偶尔的GC统计会带来一点误差，平均每次操作不到1字节都算通过
+    private static final double ZERO_BUDGET = 1.0;
+
+    private static com.sun.management.ThreadMXBean threadBean;
+    private static long counterOverhead; // 两次读计数器之间本身分配的字节数
+    private static int failures = 0;
+
+    private AllocationBudget() {
+    }
+
+    public static void main(String[] args) {
+        int ops = 1_000_000;
+        for (int i = 0; i < args.length; i++) {
+            if ("-n".equals(args[i]) && i + 1 < args.length) {
+                ops = Integer.parseInt(args[++i]);
+            }
+        }
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            System.out.println("thread allocation counter not supported on this JVM");
+            System.exit(2);
+        }
+        threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        counterOverhead = allocatedBytes();
+        counterOverhead = allocatedBytes() - counterOverhead;
+
+        System.out.println("path,params,ops,bytes_per_op,budget,result");
+
+        for (int[] level : LEVELS) {
+            final int columns = level[0];
+            final int rows = level[1];
+            final String params = columns + "x" + rows;
+            final BoardEngine engine = newEngine(columns, rows, false);
+            final int[] mismatch = BenchSupport.findMismatch(engine);
+            // 翻两张不同的牌再判定，牌翻回背面，棋盘状态不变，可以反复测
+            check("turnMismatch", params, ops, ZERO_BUDGET, () -> {
+                engine.select(mismatch[0]);
+                engine.select(mismatch[1]);
+                return engine.resolve();
+            });
+
+            final BoardEngine endless = newEngine(columns, rows, true);
+            // 无尽模式下配对、补牌是一回合，棋盘一直不会配完，可以反复测
+            check("turnMatchRefill", params, ops, ZERO_BUDGET, () -> {
+                int first = firstHidden(endless);
+                int second = partnerOf(endless, first);
+                endless.select(first);
+                endless.select(second);
+                long result = endless.resolve();
+                endless.refill(first);
+                return result;
+            });
+        }
+
+        final HudText timeText = new HudText("时间: ");
+        final int[] seconds = {0};
+        // GameClock每秒回调一次，只拼文字，不创建String
+        check("timerTick", "HudText", ops, ZERO_BUDGET, () -> {
+            seconds[0] = (seconds[0] + 1) % 6000;
+            return timeText.formatTime(seconds[0]) + timeText.getChars()[6];
+        });
+        final HudText clickText = new HudText("点击次数: ");
+        final int[] clicks = {0};
+        check("clickCount", "HudText", ops, ZERO_BUDGET, () -> {
+            clicks[0]++;
+            return clickText.formatNumber(clicks[0]);
+        });
+
+        final ReplayLog.Writer writer;
+        try {
+            writer = new ReplayLog.Writer(new NullOutputStream(), 42, 6, 5, BenchSupport.facePool(15), false, 0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        final long[] now = {0};
+        // 每次有效点击写一条记录
+        check("replayClick", "ReplayLog", ops, ZERO_BUDGET, () -> {
+            now[0] += 250;
+            try {
+                writer.click((int) (now[0] % 30), now[0]);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return now[0];
+        });
+
+        System.out.println(failures == 0 ? "all paths within budget" : failures + " path(s) over budget");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static BoardEngine newEngine(int columns, int rows, boolean endless) {
+        BoardEngine engine = new BoardEngine();
+        int pairs = columns * rows / 2;
+        // 无尽模式和游戏里一样多备一倍图片
+        engine.newGame(columns, rows, BenchSupport.facePool(endless ? pairs * 2 : pairs),
+                new Random(42), endless);
+        engine.setListener(new NoOpListener());
+        return engine;
+    }
+
+    private static int firstHidden(BoardEngine engine) {
+        for (int i = 0; i < engine.getTotalCards(); i++) {
+            if (engine.getState(i) == BoardEngine.STATE_HIDDEN) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("no hidden card");
+    }
+
+    private static int partnerOf(BoardEngine engine, int index) {
+        for (int i = 0; i < engine.getTotalCards(); i++) {
+            if (i != index && engine.getFace(i) == engine.getFace(index)) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("no partner for " + index);
+    }
+
+    // 预热后测量ops次操作的分配量，平均超过budget字节时记一次失败
+    private static void check(String name, String params, int ops, double budget, BenchSupport.Op path) {
+        BenchSupport.run(path, WARMUP_OPS);
+        long before = allocatedBytes();
+        BenchSupport.run(path, ops);
+        long allocated = Math.max(0, allocatedBytes() - before - counterOverhead);
+        double perOp = allocated / (double) ops;
+        boolean ok = perOp <= budget;
+        if (!ok) {
+            failures++;
+        }
+        System.out.println(String.format(Locale.US, "%s,%s,%d,%.3f,%.1f,%s",
+                name, params, ops, perOp, budget, ok ? "OK" : "OVER"));
+    }
+
+    private static long allocatedBytes() {
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // 和游戏界面一样接收棋盘事件，但什么也不做，测的是engine自身的开销
+    private static final class NoOpListener implements BoardEngine.Listener {
+        @Override
+        public void onCardRevealed(int index) {
+        }
+
+        @Override
+        public void onPairMatched(int first, int second) {
+        }
+
+        @Override
+        public void onPairMismatched(int first, int second) {
+        }
+
+        @Override
+        public void onGameOver(int clickCount) {
+        }
+
+        @Override
+        public void onPairRefilled(int first, int second, int swapped) {
+        }
+    }
+
+    // 丢弃写入的数据，只测编码本身的分配
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,582 @@
+package com.yao.memorytrain;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ObjectAnimator;
+import android.animation.PropertyValuesHolder;
+import android.animation.ValueAnimator;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.widget.Button;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+// 动画压力测试：在同一块区域里摆N张卡片，按固定的节奏一波一波地翻牌、最后全部消失，
+// 依次用每种渲染方式跑同一个场景，记录实际帧率、掉帧数和堆内存增长，方便比较动画方面的优化。
+// 和游戏在同一个包里，用的是游戏的R和图片资源，不在启动器里出现，用adb am start -n打开
+public class AnimationStressActivity extends AppCompatActivity {
+    private static final String TAG = "AnimationStress";
+    private static final int FRONT = R.drawable.card_front_ace1; // 所有卡片用同一张正面
+
+    private static final int[] CARD_COUNTS = {30, 100, 200, 400}; // 卡片数，点按钮轮换
+    private static final long FLIP_DURATION = 200; // 每半段翻牌的时长，和CardView一致
+    private static final long VANISH_DURATION = 1000; // 消失动画时长
+    private static final int FLIP_WAVES = 4; // 每种方式先翻几波牌，再消失一波
+    private static final long WAVE_INTERVAL = 600; // 两波之间的间隔，比一次翻牌长
+    private static final long SETTLE_DELAY = 500; // 建好卡片后等布局和解码完成再开始测
+    private static final long END_DELAY = 200; // 最后一波结束后多测一会
+
+    private FrameLayout stressContainer;
+    private TextView tvResult;
+    private Button resetButton;
+    private Button rotateButton;
+
+    private int cardCountIndex = 1;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final FrameMeter frameMeter = new FrameMeter();
+    private CardImageCache imageCache; // 游戏里的两种渲染方式用
+    private Strategy[] strategies;
+    private int strategyIndex = -1; // 正在跑的方式，-1表示没有在测
+    private final StringBuilder results = new StringBuilder();
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_animation_stress);
+
+        stressContainer = findViewById(R.id.stress_container);
+        tvResult = findViewById(R.id.tv_result);
+        resetButton = findViewById(R.id.resetButton);
+        rotateButton = findViewById(R.id.rotateButton);
+
+        imageCache = new CardImageCache(getResources());
+        strategies = new Strategy[] {
+                new ObjectAnimatorStrategy(),
+                new ViewPropertyAnimatorStrategy(),
+                new SharedAnimatorStrategy(),
+                new CardViewStrategy(),
+                new BoardViewStrategy(),
+        };
+
+        resetButton.setOnClickListener(v -> startRun());
+        rotateButton.setOnClickListener(v -> {
+            cardCountIndex = (cardCountIndex + 1) % CARD_COUNTS.length;
+            updateCountButton();
+        });
+        updateCountButton();
+        frameMeter.setRefreshRate(getWindowManager().getDefaultDisplay().getRefreshRate());
+        Logd("====onCreate======");
+    }
+
+    private void updateCountButton() {
+        rotateButton.setText("卡片数: " + CARD_COUNTS[cardCountIndex]);
+    }
+
+    // 依次用每种方式跑一遍，跑完一种再开始下一种
+    private void startRun() {
+        if (strategyIndex >= 0) {
+            return;
+        }
+        results.setLength(0);
+        results.append("cards=").append(CARD_COUNTS[cardCountIndex]).append('\n');
+        tvResult.setText(results);
+        resetButton.setEnabled(false);
+        rotateButton.setEnabled(false);
+        strategyIndex = 0;
+        runStrategy();
+    }
+
+    private void runStrategy() {
+        if (strategyIndex >= strategies.length) {
+            finishRun();
+            return;
+        }
+        final Strategy strategy = strategies[strategyIndex];
+        int count = CARD_COUNTS[cardCountIndex];
+        int columns = (int) Math.ceil(Math.sqrt(count));
+        int rows = (count + columns - 1) / columns;
+        int cellWidth = stressContainer.getWidth() / columns;
+        int cellHeight = Math.min(stressContainer.getHeight() / rows, cellWidth * 3 / 2);
+        stressContainer.removeAllViews();
+        strategy.setUp(stressContainer, columns, rows, cellWidth, cellHeight);
+
+        handler.postDelayed(() -> {
+            Runtime.getRuntime().gc(); // 尽量从干净的堆开始，增长量才有可比性
+            frameMeter.start();
+            for (int wave = 0; wave < FLIP_WAVES; wave++) {
+                handler.postDelayed(strategy::flipAll, wave * WAVE_INTERVAL);
+            }
+            handler.postDelayed(strategy::vanishAll, FLIP_WAVES * WAVE_INTERVAL);
+            handler.postDelayed(() -> {
+                frameMeter.stop();
+                String line = String.format(Locale.US, "%-16s %s", strategy.name(), frameMeter.summary());
+                Logd(line);
+                results.append(line).append('\n');
+                tvResult.setText(results);
+                strategy.tearDown();
+                strategyIndex++;
+                runStrategy();
+            }, FLIP_WAVES * WAVE_INTERVAL + VANISH_DURATION + END_DELAY);
+        }, SETTLE_DELAY);
+    }
+
+    private void finishRun() {
+        strategyIndex = -1;
+        stressContainer.removeAllViews();
+        resetButton.setEnabled(true);
+        rotateButton.setEnabled(true);
+    }
+
+    // 中途离开页面时放弃本次测试，后台的帧数据没有意义
+    @Override
+    protected void onPause() {
+        super.onPause();
+        if (strategyIndex >= 0) {
+            handler.removeCallbacksAndMessages(null);
+            frameMeter.stop();
+            strategies[Math.min(strategyIndex, strategies.length - 1)].tearDown();
+            results.append("canceled\n");
+            tvResult.setText(results);
+            finishRun();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        imageCache.shutdown();
+    }
+
+    // 测量期间每一帧都回调，统计帧数、掉帧数和堆内存
+    private static final class FrameMeter implements Choreographer.FrameCallback {
+        private long frameIntervalNanos = 16_666_667L;
+        private boolean running = false;
+        private long startNanos;
+        private long lastFrameNanos;
+        private long endNanos;
+        private int frames;
+        private int droppedFrames;
+        private long maxFrameNanos;
+        private long startHeap;
+        private long peakHeap;
+        private long endHeap;
+
+        void setRefreshRate(float refreshRate) {
+            if (refreshRate > 0) {
+                frameIntervalNanos = (long) (1_000_000_000L / refreshRate);
+            }
+        }
+
+        void start() {
+            running = true;
+            startNanos = System.nanoTime();
+            lastFrameNanos = 0;
+            frames = 0;
+            droppedFrames = 0;
+            maxFrameNanos = 0;
+            startHeap = usedHeap();
+            peakHeap = startHeap;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            if (!running) {
+                return;
+            }
+            running = false;
+            endNanos = System.nanoTime();
+            endHeap = usedHeap();
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!running) {
+                return;
+            }
+            if (lastFrameNanos != 0) {
+                long interval = frameTimeNanos - lastFrameNanos;
+                frames++;
+                maxFrameNanos = Math.max(maxFrameNanos, interval);
+                // 间隔是帧间隔的几倍，就掉了几减一帧
+                long missed = (interval + frameIntervalNanos / 2) / frameIntervalNanos - 1;
+                if (missed > 0) {
+                    droppedFrames += missed;
+                }
+            }
+            lastFrameNanos = frameTimeNanos;
+            peakHeap = Math.max(peakHeap, usedHeap());
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        String summary() {
+            float seconds = (endNanos - startNanos) / 1e9f;
+            return String.format(Locale.US, "fps=%.1f dropped=%d max=%.1fms heap=%+dKB peak=%+dKB",
+                    frames / Math.max(seconds, 0.001f), droppedFrames, maxFrameNanos / 1e6f,
+                    (endHeap - startHeap) / 1024, (peakHeap - startHeap) / 1024);
+        }
+
+        private static long usedHeap() {
+            Runtime runtime = Runtime.getRuntime();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+    }
+
+    // 一种渲染方式：建出卡片，整波翻牌、整波消失，测完拆掉
+    private interface Strategy {
+        String name();
+
+        void setUp(FrameLayout container, int columns, int rows, int cellWidth, int cellHeight);
+
+        void flipAll();
+
+        void vanishAll();
+
+        void tearDown();
+    }
+
+    // 按格子摆放一张普通的ImageView卡片，前三种方式共用
+    private ImageView addImageCard(FrameLayout container, int index, int columns, int cellWidth, int cellHeight) {
+        ImageView card = new ImageView(this);
+        card.setImageResource(R.drawable.card_back);
+        card.setScaleType(ImageView.ScaleType.FIT_CENTER);
+        card.setCameraDistance(8000 * getResources().getDisplayMetrics().density);
+        card.setLayoutParams(new FrameLayout.LayoutParams(cellWidth, cellHeight));
+        card.setX(index % columns * cellWidth);
+        card.setY(index / columns * cellHeight);
+        container.addView(card);
+        return card;
+    }
+
+    // 原来演示里的写法：每张卡片自己的ObjectAnimator，翻牌两个、消失一个
+    private final class ObjectAnimatorStrategy implements Strategy {
+        private ImageView[] cards = new ImageView[0];
+        private ObjectAnimator[] flipOut = new ObjectAnimator[0];
+        private ObjectAnimator[] flipIn = new ObjectAnimator[0];
+        private ObjectAnimator[] vanish = new ObjectAnimator[0];
+        private boolean[] front = new boolean[0];
+
+        @Override
+        public String name() {
+            return "ObjectAnimator";
+        }
+
+        @Override
+        public void setUp(FrameLayout container, int columns, int rows, int cellWidth, int cellHeight) {
+            int count = columns * rows;
+            cards = new ImageView[count];
+            flipOut = new ObjectAnimator[count];
+            flipIn = new ObjectAnimator[count];
+            vanish = new ObjectAnimator[count];
+            front = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                final int index = i;
+                final ImageView card = addImageCard(container, i, columns, cellWidth, cellHeight);
+                cards[i] = card;
+                flipIn[i] = ObjectAnimator.ofFloat(card, "rotationY", -90f, 0f);
+                flipIn[i].setDuration(FLIP_DURATION);
+                flipOut[i] = ObjectAnimator.ofFloat(card, "rotationY", 0f, 90f);
+                flipOut[i].setDuration(FLIP_DURATION);
+                flipOut[i].addListener(new AnimatorListenerAdapter() {
+                    @Override
+                    public void onAnimationEnd(Animator animation) {
+                        front[index] = !front[index];
+                        card.setImageResource(front[index] ? FRONT : R.drawable.card_back);
+                        flipIn[index].start();
+                    }
+                });
+                vanish[i] = ObjectAnimator.ofPropertyValuesHolder(card,
+                        PropertyValuesHolder.ofFloat(View.ROTATION, 0f, 360f),
+                        PropertyValuesHolder.ofFloat("scaleX", 1f, 0f),
+                        PropertyValuesHolder.ofFloat("scaleY", 1f, 0f),
+                        PropertyValuesHolder.ofFloat("alpha", 1f, 0f));
+                vanish[i].setDuration(VANISH_DURATION);
+            }
+        }
+
+        @Override
+        public void flipAll() {
+            for (int i = 0; i < cards.length; i++) {
+                flipOut[i].setFloatValues(0f, front[i] ? 90f : -90f);
+                flipIn[i].setFloatValues(front[i] ? -90f : 90f, 0f);
+                flipOut[i].start();
+            }
+        }
+
+        @Override
+        public void vanishAll() {
+            for (ObjectAnimator animator : vanish) {
+                animator.start();
+            }
+        }
+
+        @Override
+        public void tearDown() {
+            for (int i = 0; i < cards.length; i++) {
+                flipOut[i].removeAllListeners();
+                flipOut[i].cancel();
+                flipIn[i].cancel();
+                vanish[i].cancel();
+            }
+            cards = new ImageView[0];
+        }
+    }
+
+    // View.animate()：每次动画由ViewPropertyAnimator合并属性更新，结束动作用withEndAction
+    private final class ViewPropertyAnimatorStrategy implements Strategy {
+        private ImageView[] cards = new ImageView[0];
+        private boolean[] front = new boolean[0];
+
+        @Override
+        public String name() {
+            return "ViewProperty";
+        }
+
+        @Override
+        public void setUp(FrameLayout container, int columns, int rows, int cellWidth, int cellHeight) {
+            int count = columns * rows;
+            cards = new ImageView[count];
+            front = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                cards[i] = addImageCard(container, i, columns, cellWidth, cellHeight);
+            }
+        }
+
+        @Override
+        public void flipAll() {
+            for (int i = 0; i < cards.length; i++) {
+                final int index = i;
+                final ImageView card = cards[i];
+                final float angle = front[i] ? 90f : -90f;
+                card.animate().rotationY(angle).setDuration(FLIP_DURATION).withEndAction(() -> {
+                    front[index] = !front[index];
+                    card.setImageResource(front[index] ? FRONT : R.drawable.card_back);
+                    card.setRotationY(-angle);
+                    card.animate().rotationY(0f).setDuration(FLIP_DURATION);
+                });
+            }
+        }
+
+        @Override
+        public void vanishAll() {
+            for (ImageView card : cards) {
+                card.animate().rotation(360f).scaleX(0f).scaleY(0f).alpha(0f).setDuration(VANISH_DURATION);
+            }
+        }
+
+        @Override
+        public void tearDown() {
+            for (ImageView card : cards) {
+                card.animate().cancel();
+            }
+            cards = new ImageView[0];
+        }
+    }
+
+    // 所有卡片共用一个ValueAnimator，每帧在一个回调里设置所有卡片的属性
+    private final class SharedAnimatorStrategy implements Strategy {
+        private final AccelerateDecelerateInterpolator interpolator = new AccelerateDecelerateInterpolator();
+        private ImageView[] cards = new ImageView[0];
+        private boolean front = false; // 所有卡片同时翻，状态一致
+        private boolean swapped = false;
+        private ValueAnimator flipAnimator;
+        private ValueAnimator vanishAnimator;
+
+        @Override
+        public String name() {
+            return "SharedAnimator";
+        }
+
+        @Override
+        public void setUp(FrameLayout container, int columns, int rows, int cellWidth, int cellHeight) {
+            int count = columns * rows;
+            cards = new ImageView[count];
+            front = false;
+            for (int i = 0; i < count; i++) {
+                cards[i] = addImageCard(container, i, columns, cellWidth, cellHeight);
+            }
+            // 线性推进，曲线在每半段里单独算，和两个ObjectAnimator的效果一致
+            flipAnimator = ValueAnimator.ofFloat(0f, 1f);
+            flipAnimator.setDuration(FLIP_DURATION * 2);
+            flipAnimator.setInterpolator(null);
+            flipAnimator.addUpdateListener(animation -> {
+                float f = animation.getAnimatedFraction();
+                float angle = front ? 90f : -90f; // front在整次翻牌结束时才改变
+                float rotation;
+                if (f < 0.5f) {
+                    rotation = angle * interpolator.getInterpolation(f * 2f);
+                } else {
+                    if (!swapped) {
+                        swapped = true;
+                        int resId = front ? R.drawable.card_back : FRONT;
+                        for (ImageView card : cards) {
+                            card.setImageResource(resId);
+                        }
+                    }
+                    rotation = -angle * (1f - interpolator.getInterpolation(f * 2f - 1f));
+                }
+                for (ImageView card : cards) {
+                    card.setRotationY(rotation);
+                }
+            });
+            flipAnimator.addListener(new AnimatorListenerAdapter() {
+                @Override
+                public void onAnimationEnd(Animator animation) {
+                    front = !front;
+                    swapped = false;
+                }
+            });
+            vanishAnimator = ValueAnimator.ofFloat(0f, 1f);
+            vanishAnimator.setDuration(VANISH_DURATION);
+            vanishAnimator.addUpdateListener(animation -> {
+                float f = (float) animation.getAnimatedValue();
+                for (ImageView card : cards) {
+                    card.setRotation(360f * f);
+                    card.setScaleX(1f - f);
+                    card.setScaleY(1f - f);
+                    card.setAlpha(1f - f);
+                }
+            });
+        }
+
+        @Override
+        public void flipAll() {
+            flipAnimator.start();
+        }
+
+        @Override
+        public void vanishAll() {
+            vanishAnimator.start();
+        }
+
+        @Override
+        public void tearDown() {
+            flipAnimator.removeAllListeners();
+            flipAnimator.removeAllUpdateListeners();
+            flipAnimator.cancel();
+            vanishAnimator.removeAllUpdateListeners();
+            vanishAnimator.cancel();
+            cards = new ImageView[0];
+        }
+    }
+
+    // 游戏里的多视图方式：CardView，所有卡片由一个CardAnimationDriver推进
+    private final class CardViewStrategy implements Strategy {
+        private final CardAnimationDriver driver = new CardAnimationDriver();
+        private CardView[] cards = new CardView[0];
+
+        @Override
+        public String name() {
+            return "CardView+Driver";
+        }
+
+        @Override
+        public void setUp(FrameLayout container, int columns, int rows, int cellWidth, int cellHeight) {
+            int count = columns * rows;
+            cards = new CardView[count];
+            imageCache.setTargetSize(cellWidth, cellHeight);
+            for (int i = 0; i < count; i++) {
+                CardView card = new CardView(AnimationStressActivity.this);
+                card.setImageCache(imageCache);
+                card.setAnimationDriver(driver);
+                card.setLayoutParams(new FrameLayout.LayoutParams(cellWidth, cellHeight));
+                card.setX(i % columns * cellWidth);
+                card.setY(i / columns * cellHeight);
+                card.setCard(i, FRONT, R.drawable.card_back);
+                container.addView(card);
+                cards[i] = card;
+            }
+        }
+
+        @Override
+        public void flipAll() {
+            for (CardView card : cards) {
+                card.flipCard();
+            }
+        }
+
+        @Override
+        public void vanishAll() {
+            for (CardView card : cards) {
+                card.vanishCard();
+            }
+        }
+
+        @Override
+        public void tearDown() {
+            for (CardView card : cards) {
+                card.cancelAnimation();
+            }
+            cards = new CardView[0];
+        }
+    }
+
+    // 游戏里的单视图方式：整个棋盘在一个BoardView里绘制
+    private final class BoardViewStrategy implements Strategy {
+        private BoardView board;
+        private int columns;
+        private int rows;
+        private int count;
+        private int[] faces = new int[0];
+
+        @Override
+        public String name() {
+            return "BoardView";
+        }
+
+        @Override
+        public void setUp(FrameLayout container, int columns, int rows, int cellWidth, int cellHeight) {
+            this.columns = columns;
+            this.rows = rows;
+            count = columns * rows;
+            if (board == null) {
+                board = new BoardView(AnimationStressActivity.this);
+                board.setImageCache(imageCache);
+            }
+            imageCache.setTargetSize(cellWidth, cellHeight);
+            faces = new int[count];
+            Arrays.fill(faces, FRONT);
+            board.setLayoutParams(new FrameLayout.LayoutParams(columns * cellWidth, rows * cellHeight));
+            container.addView(board);
+            board.setBoard(columns, rows, faces, R.drawable.card_back);
+        }
+
+        @Override
+        public void flipAll() {
+            for (int i = 0; i < count; i++) {
+                board.flipCard(i);
+            }
+        }
+
+        @Override
+        public void vanishAll() {
+            for (int i = 0; i < count; i++) {
+                board.vanishCard(i);
+            }
+        }
+
+        @Override
+        public void tearDown() {
+            // 重新设置一次棋盘，清掉中途取消时还没播完的动画，BoardView随后停止请求帧回调
+            board.setBoard(columns, rows, faces, R.drawable.card_back);
+            count = 0;
+        }
+    }
+
+    void Logd(String msg) {
+        GameLog.d(TAG, msg);
+    }
+    void Loge(String msg) {
+        GameLog.e(TAG, msg);
+    }
+}
@@ -0,0 +1,44 @@
+package com.yao.memorytrain;
+
+// jmh/BoardBenchmarks和AllocationBudget共用的部分：测试用的图片池、棋盘上的查找、反复调用一项操作的循环
+final class BenchSupport {
+    static final int RESOURCE_FACES = 18; // 和游戏里的图片资源数一样，超过的牌面用生成的补
+
+    // 一项操作：每次调用run()算一次，返回值防止被JIT优化掉
+    interface Op {
+        long run();
+    }
+
+    private static volatile long sink; // 吸收结果
+
+    private BenchSupport() {
+    }
+
+    // 调用ops次，结果累加后写进sink
+    static void run(Op op, long ops) {
+        long result = 0;
+        for (long i = 0; i < ops; i++) {
+            result += op.run();
+        }
+        sink += result;
+    }
+
+    static int[] facePool(int size) {
+        int[] pool = new int[Math.max(size, RESOURCE_FACES)];
+        for (int i = 0; i < pool.length; i++) {
+            // 生成的牌面ID和GeneratedFaceFactory.faceId()一样是负数，这里不引用它，免得在JVM上加载Android类
+            pool[i] = i < RESOURCE_FACES ? i + 1 : -1 - (i - RESOURCE_FACES);
+        }
+        return pool;
+    }
+
+    // 第0格和第一张和它不同的牌，翻开后判定一定是没配上
+    static int[] findMismatch(BoardEngine engine) {
+        for (int i = 1; i < engine.getTotalCards(); i++) {
+            if (engine.getFace(i) != engine.getFace(0)) {
+                return new int[] {0, i};
+            }
+        }
+        throw new IllegalStateException("no mismatching pair");
+    }
+}
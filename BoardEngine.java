@@ -0,0 +1,453 @@
+package com.yao.memorytrain;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+// 翻牌游戏的棋盘逻辑，纯Java实现，不依赖Android，可以直接在JVM上测试和跑性能测试。
+// 棋盘用int[]保存每个格子的图片ID，用byte[]保存每个格子的状态，界面只负责渲染这里发出的事件。
+// 无尽模式下配对的两格消失后原地补上新的一对，一局不会结束，配对数和点击次数一直累加
+public class BoardEngine {
+    private static final byte SNAPSHOT_VERSION = 2;
+    private static final int SNAPSHOT_HEADER_SIZE = 1 + 6 * 4 + 1; // 版本号+6个int+无尽模式
+    private static final int MAX_SIDE = 1024; // 存档里的行列数超过这个就是坏数据，也防止相乘溢出
+
+    // 格子状态
+    public static final byte STATE_HIDDEN = 0;   // 背面朝上
+    public static final byte STATE_REVEALED = 1; // 已翻开，等待判定
+    public static final byte STATE_MATCHED = 2;  // 已配对
+
+    // select()的返回值
+    public static final int SELECT_IGNORED = 0; // 不能翻：已翻开、已配对或者已经翻了两张在等判定
+    public static final int SELECT_FIRST = 1;   // 翻开了本回合第一张
+    public static final int SELECT_SECOND = 2;  // 翻开了本回合第二张，需要调用resolve()
+
+    // resolve()的返回值
+    public static final int RESOLVE_NONE = 0;      // 没有待判定的两张牌
+    public static final int RESOLVE_MATCH = 1;     // 配对成功
+    public static final int RESOLVE_MISMATCH = 2;  // 配对失败，两张牌翻回背面
+    public static final int RESOLVE_GAME_OVER = 3; // 配对成功并且所有牌都已配对
+
+    // 棋盘事件，界面根据这些事件播放动画
+    public interface Listener {
+        void onCardRevealed(int index);
+
+        void onPairMatched(int first, int second);
+
+        void onPairMismatched(int first, int second);
+
+        void onGameOver(int clickCount);
+
+        // 无尽模式补牌：first、second换上了新牌，背面朝上；swapped是和它们交换了牌面的格子，没有时为-1
+        void onPairRefilled(int first, int second, int swapped);
+    }
+
+    private int columnCount;
+    private int rowCount;
+    private int totalCards;
+    private int[] faces = new int[0];   // 每个格子的图片ID
+    private byte[] states = new byte[0]; // 每个格子的状态
+    private int[] poolScratch = new int[0]; // 洗牌用的临时数组，避免每局分配。前totalCards/2个是棋盘上正在用的图片
+    private int poolSize = 0;
+    private boolean endless = false;
+    private Random random; // 无尽模式补牌用，和洗牌用同一个，同样的种子和操作补出同样的牌
+
+    private int firstIndex = -1;
+    private int secondIndex = -1;
+    private int matchedPairsCount = 0;
+    private int clickCounter = 0;
+    // 最近一次没配上的两张，界面上可能还在播翻回动画，补牌时不和它们交换
+    private int lastMismatchFirst = -1;
+    private int lastMismatchSecond = -1;
+
+    private Listener listener;
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // 开始新的一局：从facePool中随机选出totalCards/2种图片，每种两张，打乱后放到棋盘上
+    public void newGame(int columnCount, int rowCount, int[] facePool, Random random) {
+        newGame(columnCount, rowCount, facePool, random, false);
+    }
+
+    // endless为true时开始无尽模式，facePool比totalCards/2多出来的图片用于补牌
+    public void newGame(int columnCount, int rowCount, int[] facePool, Random random, boolean endless) {
+        int total = columnCount * rowCount;
+        if (total % 2 != 0) {
+            throw new IllegalArgumentException("total cards must be even: " + columnCount + "x" + rowCount);
+        }
+        int pairs = total / 2;
+        if (pairs > facePool.length) {
+            throw new IllegalArgumentException("not enough faces: need " + pairs + ", have " + facePool.length);
+        }
+        this.columnCount = columnCount;
+        this.rowCount = rowCount;
+        this.totalCards = total;
+        this.endless = endless;
+        this.random = random;
+        if (faces.length != total) {
+            faces = new int[total];
+            states = new byte[total];
+        }
+        if (poolScratch.length != facePool.length) {
+            poolScratch = new int[facePool.length];
+        }
+        poolSize = facePool.length;
+
+        // 部分Fisher-Yates洗牌，只需要选出前pairs个
+        System.arraycopy(facePool, 0, poolScratch, 0, facePool.length);
+        for (int i = 0; i < pairs; i++) {
+            int j = i + random.nextInt(poolScratch.length - i);
+            int tmp = poolScratch[i];
+            poolScratch[i] = poolScratch[j];
+            poolScratch[j] = tmp;
+            faces[i * 2] = poolScratch[i];
+            faces[i * 2 + 1] = poolScratch[i]; // 每张图片放两次，形成一对
+        }
+        shuffle(faces, random); // 打乱所有卡片的位置
+
+        for (int i = 0; i < total; i++) {
+            states[i] = STATE_HIDDEN;
+        }
+        firstIndex = -1;
+        secondIndex = -1;
+        matchedPairsCount = 0;
+        clickCounter = 0;
+        lastMismatchFirst = -1;
+        lastMismatchSecond = -1;
+    }
+
+    // 恢复存档后接上图片池和随机数，无尽模式补牌要用。
+    // 棋盘上正在用的图片移到池的前面，和newGame之后的排列一致。
+    // 存档可能是旧版本或者被改坏的：棋盘上有池里没有的图片，或者某种图片不是正好两张时返回false，
+    // 这时棋盘不能用，调用方应该开新局
+    public boolean attachFacePool(int[] facePool, Random random) {
+        // 只在恢复时调用一次，排序后的副本分配可以接受，大棋盘上也不用两两比较
+        int[] sortedFaces = Arrays.copyOf(faces, totalCards);
+        Arrays.sort(sortedFaces);
+        int[] sortedPool = facePool.clone();
+        Arrays.sort(sortedPool);
+        for (int i = 0; i < totalCards; i += 2) {
+            boolean pair = sortedFaces[i] == sortedFaces[i + 1]
+                    && (i + 2 == totalCards || sortedFaces[i + 2] != sortedFaces[i]);
+            if (!pair || Arrays.binarySearch(sortedPool, sortedFaces[i]) < 0) {
+                return false;
+            }
+        }
+        this.random = random;
+        if (poolScratch.length != facePool.length) {
+            poolScratch = new int[facePool.length];
+        }
+        poolSize = facePool.length;
+        System.arraycopy(facePool, 0, poolScratch, 0, poolSize);
+        int used = 0;
+        for (int k = 0; k < poolSize && used < totalCards / 2; k++) {
+            if (isOnBoard(poolScratch[k])) {
+                int tmp = poolScratch[used];
+                poolScratch[used] = poolScratch[k];
+                poolScratch[k] = tmp;
+                used++;
+            }
+        }
+        return true;
+    }
+
+
+    private boolean isOnBoard(int face) {
+        for (int i = 0; i < totalCards; i++) {
+            if (faces[i] == face) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void shuffle(int[] array, Random random) {
+        for (int i = array.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = array[i];
+            array[i] = array[j];
+            array[j] = tmp;
+        }
+    }
+
+    // 玩家点击第index张牌
+    public int select(int index) {
+        if (index < 0 || index >= totalCards || states[index] != STATE_HIDDEN || secondIndex >= 0) {
+            return SELECT_IGNORED;
+        }
+        states[index] = STATE_REVEALED;
+        clickCounter++;
+        if (listener != null) {
+            listener.onCardRevealed(index);
+        }
+        if (firstIndex < 0) {
+            firstIndex = index;
+            return SELECT_FIRST;
+        }
+        secondIndex = index;
+        return SELECT_SECOND;
+    }
+
+    // 判定本回合翻开的两张牌
+    public int resolve() {
+        if (firstIndex < 0 || secondIndex < 0) {
+            return RESOLVE_NONE;
+        }
+        int first = firstIndex;
+        int second = secondIndex;
+        firstIndex = -1;
+        secondIndex = -1;
+
+        if (faces[first] != faces[second]) {
+            states[first] = STATE_HIDDEN;
+            states[second] = STATE_HIDDEN;
+            lastMismatchFirst = first;
+            lastMismatchSecond = second;
+            if (listener != null) {
+                listener.onPairMismatched(first, second);
+            }
+            return RESOLVE_MISMATCH;
+        }
+
+        states[first] = STATE_MATCHED;
+        states[second] = STATE_MATCHED;
+        matchedPairsCount++;
+        if (listener != null) {
+            listener.onPairMatched(first, second);
+        }
+        if (isGameOver()) {
+            if (listener != null) {
+                listener.onGameOver(clickCounter);
+            }
+            return RESOLVE_GAME_OVER;
+        }
+        return RESOLVE_MATCH;
+    }
+
+    // 无尽模式：第index格和与它配对的那格都消失后，原地补上新的一对，返回是否补了。
+    // 新图片从池里不在棋盘上的图片中随机抽（池里没有多余的就还用原来的），放到index格；
+    // 另一格和一张随机的背面朝上的牌交换牌面，否则新的一对总在刚消失的两个位置上，不用记就能配对
+    public boolean refill(int index) {
+        if (!endless || random == null || index < 0 || index >= totalCards || states[index] != STATE_MATCHED) {
+            return false;
+        }
+        int partner = findPartner(index);
+        if (partner < 0) {
+            return false;
+        }
+        int face = drawFace(faces[index]);
+        int swapped = pickSwapCell();
+        faces[index] = face;
+        if (swapped >= 0) {
+            faces[partner] = faces[swapped];
+            faces[swapped] = face;
+        } else {
+            faces[partner] = face;
+        }
+        states[index] = STATE_HIDDEN;
+        states[partner] = STATE_HIDDEN;
+        if (listener != null) {
+            listener.onPairRefilled(index, partner, swapped);
+        }
+        return true;
+    }
+
+    // 和第index格配对的格子，第index格不是已配对状态时返回-1。每种图片同时只有一对在棋盘上
+    public int findPartner(int index) {
+        if (states[index] != STATE_MATCHED) {
+            return -1;
+        }
+        for (int i = 0; i < totalCards; i++) {
+            if (i != index && faces[i] == faces[index] && states[i] == STATE_MATCHED) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // 把刚配对的图片还回池里，换一张不在棋盘上的出来
+    private int drawFace(int oldFace) {
+        int pairs = totalCards / 2;
+        if (poolSize <= pairs) {
+            return oldFace;
+        }
+        for (int k = 0; k < pairs; k++) {
+            if (poolScratch[k] == oldFace) {
+                int j = pairs + random.nextInt(poolSize - pairs);
+                poolScratch[k] = poolScratch[j];
+                poolScratch[j] = oldFace;
+                return poolScratch[k];
+            }
+        }
+        return oldFace;
+    }
+
+    // 随机选一张背面朝上、不在播翻回动画的牌，没有时返回-1
+    private int pickSwapCell() {
+        int candidates = 0;
+        for (int i = 0; i < totalCards; i++) {
+            if (isSwapCandidate(i)) {
+                candidates++;
+            }
+        }
+        if (candidates == 0) {
+            return -1;
+        }
+        int target = random.nextInt(candidates);
+        for (int i = 0; i < totalCards; i++) {
+            if (isSwapCandidate(i) && target-- == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isSwapCandidate(int i) {
+        return states[i] == STATE_HIDDEN && i != lastMismatchFirst && i != lastMismatchSecond;
+    }
+
+    // 存档大小：头部加上每格一个int的图片ID和一个byte的状态
+    public int getSnapshotSize() {
+        return SNAPSHOT_HEADER_SIZE + totalCards * 5;
+    }
+
+    // 把棋盘写入buffer，用于旋转屏幕和进程被杀后恢复，不需要重新洗牌
+    public void writeSnapshot(ByteBuffer buffer) {
+        buffer.put(SNAPSHOT_VERSION);
+        buffer.putInt(columnCount);
+        buffer.putInt(rowCount);
+        buffer.putInt(firstIndex);
+        buffer.putInt(secondIndex);
+        buffer.putInt(matchedPairsCount);
+        buffer.putInt(clickCounter);
+        buffer.put((byte) (endless ? 1 : 0));
+        for (int i = 0; i < totalCards; i++) {
+            buffer.putInt(faces[i]);
+        }
+        buffer.put(states, 0, totalCards);
+    }
+
+    // 从writeSnapshot()写的数据恢复棋盘，数据不完整、版本不对或者内容前后矛盾时返回false，棋盘保持不变。
+    // 存档文件可能被截断或者是旧的，所有字段都先检查完再改棋盘，免得之后在判定时数组越界
+    public boolean readSnapshot(ByteBuffer buffer) {
+        if (buffer.remaining() < SNAPSHOT_HEADER_SIZE || buffer.get() != SNAPSHOT_VERSION) {
+            return false;
+        }
+        int columns = buffer.getInt();
+        int rows = buffer.getInt();
+        int first = buffer.getInt();
+        int second = buffer.getInt();
+        int matchedPairs = buffer.getInt();
+        int clicks = buffer.getInt();
+        boolean endlessGame = buffer.get() != 0;
+        if (columns <= 0 || rows <= 0 || columns > MAX_SIDE || rows > MAX_SIDE) {
+            return false;
+        }
+        int total = columns * rows;
+        // 第二张只能在第一张之后翻开；无尽模式的配对数会超过总对数
+        if (total % 2 != 0 || buffer.remaining() < total * 5
+                || first < -1 || first >= total || second < -1 || second >= total
+                || (first < 0 && second >= 0) || (first >= 0 && first == second)
+                || matchedPairs < 0 || clicks < 0 || (!endlessGame && matchedPairs * 2 > total)) {
+            return false;
+        }
+        // 状态在图片ID后面，先按绝对位置检查一遍
+        int statesOffset = buffer.position() + total * 4;
+        int revealed = 0;
+        int matched = 0;
+        for (int i = 0; i < total; i++) {
+            byte state = buffer.get(statesOffset + i);
+            if (state == STATE_REVEALED) {
+                if (i != first && i != second) {
+                    return false; // 翻开的牌只能是本回合的两张
+                }
+                revealed++;
+            } else if (state == STATE_MATCHED) {
+                matched++;
+            } else if (state != STATE_HIDDEN) {
+                return false;
+            }
+        }
+        int expectedRevealed = (first >= 0 ? 1 : 0) + (second >= 0 ? 1 : 0);
+        if (revealed != expectedRevealed || matched % 2 != 0 || (!endlessGame && matched != matchedPairs * 2)) {
+            return false;
+        }
+        this.columnCount = columns;
+        this.rowCount = rows;
+        this.totalCards = total;
+        if (faces.length != total) {
+            faces = new int[total];
+            states = new byte[total];
+        }
+        for (int i = 0; i < total; i++) {
+            faces[i] = buffer.getInt();
+        }
+        buffer.get(states, 0, total);
+        firstIndex = first;
+        secondIndex = second;
+        matchedPairsCount = matchedPairs;
+        clickCounter = clicks;
+        endless = endlessGame;
+        lastMismatchFirst = -1;
+        lastMismatchSecond = -1;
+        return true;
+    }
+
+    // 本回合翻开的第一张、第二张，没有时为-1
+    public int getFirstIndex() {
+        return firstIndex;
+    }
+
+    public int getSecondIndex() {
+        return secondIndex;
+    }
+
+    public boolean hasPendingPair() {
+        return secondIndex >= 0;
+    }
+
+    // 无尽模式不会结束
+    public boolean isGameOver() {
+        return !endless && totalCards > 0 && matchedPairsCount * 2 == totalCards;
+    }
+
+    public boolean isEndless() {
+        return endless;
+    }
+
+    // Getters
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getTotalCards() {
+        return totalCards;
+    }
+
+    public int getFace(int index) {
+        return faces[index];
+    }
+
+    public byte getState(int index) {
+        return states[index];
+    }
+
+    // 直接返回内部数组，调用方不要修改
+    public int[] getFaces() {
+        return faces;
+    }
+
+    public int getMatchedPairsCount() {
+        return matchedPairsCount;
+    }
+
+    public int getClickCount() {
+        return clickCounter;
+    }
+}
@@ -0,0 +1,474 @@
+package com.yao.memorytrain;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Camera;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.animation.AccelerateDecelerateInterpolator;
+
+// 单视图棋盘：整个棋盘在一个onDraw里画完，自己做点击检测，
+// 和GridLayout+CardView的方式二选一，用来对比大棋盘的帧耗时
+public class BoardView extends View implements Choreographer.FrameCallback {
+    // 棋盘事件回调，和CardView.OnCardAnimationListener对应
+    public interface OnBoardEventListener {
+        void onCellClicked(int index);
+
+        void onCellFlipEnd(int index, boolean front);
+
+        void onCellVanishEnd(int index);
+
+        void onCellAppearEnd(int index);
+    }
+
+    // 动画类型，和CardView保持一致
+    private static final int ANIM_NONE = 0;
+    private static final int ANIM_FLIP_OUT = 1;
+    private static final int ANIM_FLIP_IN = 2;
+    private static final int ANIM_VANISH = 3;
+    private static final int ANIM_APPEAR = 4;
+
+    private static final long FLIP_DURATION_NANOS = 200_000_000L;
+    private static final long VANISH_DURATION_NANOS = 1000_000_000L;
+    private static final long APPEAR_DURATION_NANOS = 300_000_000L;
+    private static final float CAMERA_DISTANCE = 8000; // 和AnimationStressActivity里setCameraDistance用的经验值相同
+    private static final int CELL_MARGIN_DP = 4;
+    private static final AccelerateDecelerateInterpolator INTERPOLATOR = new AccelerateDecelerateInterpolator();
+
+    private int columnCount;
+    private int rowCount;
+    private int totalCards;
+    private int[] faces = new int[0];
+    private int backResId;
+
+    // 每个格子的状态，都用基本类型数组保存
+    private boolean[] frontShowing = new boolean[0];
+    private boolean[] vanished = new boolean[0];
+    private int[] animTypes = new int[0];
+    private long[] animStarts = new long[0];
+    private float[] rotationY = new float[0]; // 翻牌角度
+    private float[] vanishFraction = new float[0]; // 消失进度，0~1。补牌出现时是出现进度
+    private float[] flipTargets = new float[0]; // 前半段要转到的角度，90或-90
+
+    private Bitmap[] faceBitmaps = new Bitmap[0]; // 每个格子的正面图，没解码好时为null
+    private Bitmap backBitmap;
+    private CardAtlas atlas;
+    private CardImageCache imageCache;
+
+    private final Paint bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint placeholderPaint = new Paint();
+    private final Camera camera = new Camera();
+    private final Matrix matrix = new Matrix();
+    private final RectF cellRect = new RectF();
+    private final Rect srcRect = new Rect();
+    private float cellMargin;
+    private int animatingCount = 0;
+    private boolean frameScheduled = false;
+    private boolean paused = false;
+    private long pauseNanos;
+
+    private OnBoardEventListener listener;
+
+    public BoardView(Context context) {
+        super(context);
+        init();
+    }
+
+    public BoardView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    public BoardView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+
+    private void init() {
+        float density = getResources().getDisplayMetrics().density;
+        cellMargin = CELL_MARGIN_DP * density;
+        // Camera的距离单位是英寸（72像素），换算方法和View.setCameraDistance相同
+        camera.setLocation(0, 0, -CAMERA_DISTANCE * density / getResources().getDisplayMetrics().densityDpi);
+        placeholderPaint.setColor(0xFFE0E0E0);
+    }
+
+    public void setOnBoardEventListener(OnBoardEventListener listener) {
+        this.listener = listener;
+    }
+
+    public void setImageCache(CardImageCache imageCache) {
+        this.imageCache = imageCache;
+    }
+
+    // 换一局新棋盘，数组大小不变时直接复用
+    public void setBoard(int columnCount, int rowCount, int[] faces, int backResId) {
+        this.columnCount = columnCount;
+        this.rowCount = rowCount;
+        this.totalCards = columnCount * rowCount;
+        this.backResId = backResId;
+        if (this.faces.length != totalCards) {
+            this.faces = new int[totalCards];
+            frontShowing = new boolean[totalCards];
+            vanished = new boolean[totalCards];
+            animTypes = new int[totalCards];
+            animStarts = new long[totalCards];
+            rotationY = new float[totalCards];
+            vanishFraction = new float[totalCards];
+            flipTargets = new float[totalCards];
+            faceBitmaps = new Bitmap[totalCards];
+        }
+        System.arraycopy(faces, 0, this.faces, 0, totalCards);
+        for (int i = 0; i < totalCards; i++) {
+            frontShowing[i] = false;
+            vanished[i] = false;
+            animTypes[i] = ANIM_NONE;
+            rotationY[i] = 0f;
+            vanishFraction[i] = 0f;
+            faceBitmaps[i] = null; // 数组复用时不能留着上一局的图
+        }
+        animatingCount = 0;
+        bindBitmaps();
+        invalidate();
+    }
+
+    // 从缓存取出所有格子的图片，绘制时不再查缓存。图集模式下只取图集里没有的（程序生成的牌面）
+    private void bindBitmaps() {
+        atlas = imageCache != null ? imageCache.getAtlas() : null;
+        if (imageCache == null) {
+            return;
+        }
+        if (atlas == null) {
+            backBitmap = imageCache.getBitmap(backResId);
+        }
+        for (int i = 0; i < totalCards; i++) {
+            faceBitmaps[i] = peekFaceBitmap(faces[i]);
+        }
+    }
+
+    // 图集里有的牌面直接画图集，不需要单独的Bitmap
+    private Bitmap peekFaceBitmap(int face) {
+        if (imageCache == null || (atlas != null && atlas.contains(face))) {
+            return null;
+        }
+        return imageCache.peekBitmap(face);
+    }
+
+    // 后台解码完成通知
+    public void onImageReady(int resId) {
+        if (imageCache == null) {
+            return;
+        }
+        CardAtlas readyAtlas = imageCache.getAtlas();
+        if (readyAtlas != null && atlas != readyAtlas) {
+            atlas = readyAtlas;
+            invalidate();
+        }
+        if (atlas != null && atlas.contains(resId)) {
+            return; // 不在图集里的程序牌面继续往下，按格子单独放图
+        }
+        // 换了尺寸时旧图一直用到新图准备好为止
+        Bitmap bitmap = imageCache.peekBitmap(resId);
+        if (bitmap == null) {
+            return;
+        }
+        if (resId == backResId) {
+            backBitmap = bitmap;
+        }
+        for (int i = 0; i < totalCards; i++) {
+            if (faces[i] == resId && !vanished[i]) {
+                faceBitmaps[i] = bitmap;
+            }
+        }
+        invalidate();
+    }
+
+    // 内存紧张时调用：消失动画已经结束的格子不再绘制，放掉它们的正面图
+    public void releaseVanishedFaces() {
+        for (int i = 0; i < totalCards; i++) {
+            if (vanished[i] && animTypes[i] == ANIM_NONE) {
+                faceBitmaps[i] = null;
+            }
+        }
+    }
+
+    public void flipCard(int index) {
+        flipTargets[index] = frontShowing[index] ? 90f : -90f;
+        startAnimation(index, ANIM_FLIP_OUT);
+    }
+
+    public void flipBack(int index) {
+        flipCard(index);
+    }
+
+    public void vanishCard(int index) {
+        if (animTypes[index] != ANIM_NONE) {
+            return;
+        }
+        startAnimation(index, ANIM_VANISH);
+    }
+
+    // 无尽模式补牌：已消失的格子换上新牌，背面朝上放大淡入
+    public void refillCell(int index, int face) {
+        replaceFace(index, face);
+        frontShowing[index] = false;
+        vanished[index] = false;
+        rotationY[index] = 0f;
+        vanishFraction[index] = 0f;
+        startAnimation(index, ANIM_APPEAR);
+    }
+
+    // 只换格子的正面图片，不动显示状态
+    public void replaceFace(int index, int face) {
+        faces[index] = face;
+        faceBitmaps[index] = peekFaceBitmap(face);
+        invalidate();
+    }
+
+    // 不播动画，直接显示某个状态，用于恢复存档
+    public void showState(int index, boolean front, boolean matched) {
+        frontShowing[index] = front || matched;
+        vanished[index] = matched;
+        invalidate();
+    }
+
+    public boolean isAnimating(int index) {
+        return animTypes[index] != ANIM_NONE;
+    }
+
+    public boolean isFront(int index) {
+        return frontShowing[index];
+    }
+
+    private void startAnimation(int index, int type) {
+        if (animTypes[index] == ANIM_NONE) {
+            animatingCount++;
+        }
+        animTypes[index] = type;
+        animStarts[index] = -1;
+        if (!frameScheduled && !paused) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    // 页面不可见时暂停动画，不再请求帧回调
+    public void pauseAnimations() {
+        if (paused) {
+            return;
+        }
+        paused = true;
+        pauseNanos = System.nanoTime();
+        if (frameScheduled) {
+            frameScheduled = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    // 恢复后开始时间顺延暂停的时长，动画从暂停处接着播
+    public void resumeAnimations() {
+        if (!paused) {
+            return;
+        }
+        paused = false;
+        long pausedNanos = System.nanoTime() - pauseNanos;
+        for (int i = 0; i < totalCards; i++) {
+            if (animTypes[i] != ANIM_NONE && animStarts[i] >= 0) {
+                animStarts[i] += pausedNanos;
+            }
+        }
+        if (animatingCount > 0 && !frameScheduled) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        for (int i = 0; i < totalCards && animatingCount > 0; i++) {
+            if (animTypes[i] != ANIM_NONE) {
+                advance(i, frameTimeNanos);
+            }
+        }
+        invalidate();
+        if (animatingCount > 0 && !frameScheduled && !paused) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    private void advance(int i, long frameTimeNanos) {
+        if (animStarts[i] < 0) {
+            animStarts[i] = frameTimeNanos;
+        }
+        long elapsed = frameTimeNanos - animStarts[i];
+        switch (animTypes[i]) {
+            case ANIM_FLIP_OUT:
+                if (elapsed < FLIP_DURATION_NANOS) {
+                    rotationY[i] = flipTargets[i] * fraction(elapsed, FLIP_DURATION_NANOS);
+                    return;
+                }
+                frontShowing[i] = !frontShowing[i];
+                animTypes[i] = ANIM_FLIP_IN;
+                animStarts[i] += FLIP_DURATION_NANOS;
+                advance(i, frameTimeNanos);
+                return;
+            case ANIM_FLIP_IN:
+                if (elapsed < FLIP_DURATION_NANOS) {
+                    rotationY[i] = -flipTargets[i] * (1f - fraction(elapsed, FLIP_DURATION_NANOS));
+                    return;
+                }
+                rotationY[i] = 0f;
+                animTypes[i] = ANIM_NONE;
+                animatingCount--;
+                if (listener != null) {
+                    listener.onCellFlipEnd(i, frontShowing[i]);
+                }
+                return;
+            case ANIM_VANISH:
+                if (elapsed < VANISH_DURATION_NANOS) {
+                    vanishFraction[i] = fraction(elapsed, VANISH_DURATION_NANOS);
+                    return;
+                }
+                vanishFraction[i] = 1f;
+                vanished[i] = true;
+                animTypes[i] = ANIM_NONE;
+                animatingCount--;
+                if (listener != null) {
+                    listener.onCellVanishEnd(i);
+                }
+                return;
+            case ANIM_APPEAR:
+                if (elapsed < APPEAR_DURATION_NANOS) {
+                    vanishFraction[i] = fraction(elapsed, APPEAR_DURATION_NANOS);
+                    return;
+                }
+                vanishFraction[i] = 0f;
+                animTypes[i] = ANIM_NONE;
+                animatingCount--;
+                if (listener != null) {
+                    listener.onCellAppearEnd(i);
+                }
+                return;
+            default:
+        }
+    }
+
+    private static float fraction(long elapsed, long duration) {
+        return INTERPOLATOR.getInterpolation(elapsed / (float) duration);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (totalCards == 0) {
+            return;
+        }
+        float cellWidth = getWidth() / (float) columnCount;
+        float cellHeight = getHeight() / (float) rowCount;
+        for (int i = 0; i < totalCards; i++) {
+            if (vanished[i]) {
+                continue;
+            }
+            float left = (i % columnCount) * cellWidth;
+            float top = (i / columnCount) * cellHeight;
+            cellRect.set(left + cellMargin, top + cellMargin, left + cellWidth - cellMargin, top + cellHeight - cellMargin);
+            float centerX = cellRect.centerX();
+            float centerY = cellRect.centerY();
+
+            canvas.save();
+            if (rotationY[i] != 0f) {
+                // 绕卡片中心做3D翻转
+                camera.save();
+                camera.rotateY(rotationY[i]);
+                camera.getMatrix(matrix);
+                camera.restore();
+                matrix.preTranslate(-centerX, -centerY);
+                matrix.postTranslate(centerX, centerY);
+                canvas.concat(matrix);
+            }
+            int alpha = 255;
+            if (animTypes[i] == ANIM_VANISH) {
+                float f = vanishFraction[i];
+                canvas.rotate(360f * f, centerX, centerY);
+                canvas.scale(1f - f, 1f - f, centerX, centerY);
+                alpha = (int) (255 * (1f - f));
+            } else if (animTypes[i] == ANIM_APPEAR) {
+                float f = vanishFraction[i];
+                canvas.scale(f, f, centerX, centerY);
+                alpha = (int) (255 * f);
+            }
+            drawCell(canvas, i, alpha);
+            canvas.restore();
+        }
+    }
+
+    private void drawCell(Canvas canvas, int i, int alpha) {
+        int resId = frontShowing[i] ? faces[i] : backResId;
+        if (atlas != null && atlas.contains(resId)) {
+            bitmapPaint.setAlpha(alpha);
+            canvas.drawBitmap(atlas.getBitmap(), atlas.getRegion(resId), cellRect, bitmapPaint);
+            return;
+        }
+        Bitmap bitmap = frontShowing[i] ? faceBitmaps[i] : backBitmap;
+        if (bitmap == null) {
+            placeholderPaint.setAlpha(alpha); // 图片还没解码好，先画占位色
+            canvas.drawRect(cellRect, placeholderPaint);
+            return;
+        }
+        srcRect.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        bitmapPaint.setAlpha(alpha);
+        canvas.drawBitmap(bitmap, srcRect, cellRect, bitmapPaint);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                return totalCards > 0;
+            case MotionEvent.ACTION_UP:
+                int index = hitTest(event.getX(), event.getY());
+                if (index >= 0 && listener != null) {
+                    performClick();
+                    listener.onCellClicked(index);
+                }
+                return true;
+            default:
+                return super.onTouchEvent(event);
+        }
+    }
+
+    @Override
+    public boolean performClick() {
+        return super.performClick();
+    }
+
+    // 点击位置对应的格子，落在格子间隙或已消失的格子上返回-1
+    private int hitTest(float x, float y) {
+        if (totalCards == 0 || x < 0 || y < 0 || x >= getWidth() || y >= getHeight()) {
+            return -1;
+        }
+        float cellWidth = getWidth() / (float) columnCount;
+        float cellHeight = getHeight() / (float) rowCount;
+        int column = (int) (x / cellWidth);
+        int row = (int) (y / cellHeight);
+        float localX = x - column * cellWidth;
+        float localY = y - row * cellHeight;
+        if (localX < cellMargin || localX > cellWidth - cellMargin
+                || localY < cellMargin || localY > cellHeight - cellMargin) {
+            return -1;
+        }
+        int index = row * columnCount + column;
+        if (index >= totalCards || vanished[index]) {
+            return -1;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,383 @@
+package com.yao.memorytrain;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// 用机器人在普通JVM上大量模拟对局，统计每种棋盘大小的点击次数分布，用来校准难度。
+// 规则和游戏里一样由BoardEngine执行：翻两张，相同则配对，不同则翻回。
+// 机器人的记忆模型可配置：完美记忆、只记得最近几张、每回合按概率遗忘。
+// 对局按数量拆成fork-join任务分到所有核心上，每个任务有自己的engine、机器人和SplittableRandom，
+// 热路径上没有共享的可变状态，结果在任务合并时相加。
+// 同一个种子每组参数的结果完全一样（任务按局数拆分，和线程调度无关），不指定时用System.nanoTime()，
+// 种子打印在输出的第一行，要复现某次结果就用-seed传回去。
+// 用法：java com.yao.memorytrain.BotSimulator [-n 每组局数] [-t 线程数] [-seed 种子] [-scale]
+public final class BotSimulator {
+    // 记忆模型
+    public static final int MEMORY_PERFECT = 0; // 记得翻开过的所有牌
+    public static final int MEMORY_LIMITED = 1; // 只记得最近翻开的memorySize张
+    public static final int MEMORY_FORGET = 2;  // 每回合每张记住的牌以forgetProbability的概率忘掉
+
+    private static final int[][] LEVELS = {{3, 2}, {4, 3}, {5, 4}, {6, 5}, {10, 10}};
+    private static final int LEAF_GAMES = 2048; // 每个叶子任务跑的局数
+    private static final int MAX_CLICKS_PER_CARD = 50; // 点击次数超过卡片数的这个倍数就放弃这局
+
+    private BotSimulator() {
+    }
+
+    // 一组模拟的参数
+    public static final class Config {
+        public final int columnCount;
+        public final int rowCount;
+        public final int memoryModel;
+        public final int memorySize;
+        public final double forgetProbability;
+
+        public Config(int columnCount, int rowCount, int memoryModel, int memorySize, double forgetProbability) {
+            this.columnCount = columnCount;
+            this.rowCount = rowCount;
+            this.memoryModel = memoryModel;
+            this.memorySize = memorySize;
+            this.forgetProbability = forgetProbability;
+        }
+
+        int maxClicks() {
+            return columnCount * rowCount * MAX_CLICKS_PER_CARD;
+        }
+
+        String modelName() {
+            switch (memoryModel) {
+                case MEMORY_LIMITED:
+                    return "limited(" + memorySize + ")";
+                case MEMORY_FORGET:
+                    return String.format(Locale.US, "forget(%.2f)", forgetProbability);
+                default:
+                    return "perfect";
+            }
+        }
+    }
+
+    // 点击次数分布，下标是点击次数，最后一格是放弃的对局
+    public static final class Histogram {
+        final long[] counts;
+
+        Histogram(int maxClicks) {
+            counts = new long[maxClicks + 2];
+        }
+
+        void add(Histogram other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+        }
+
+        public long total() {
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            return total;
+        }
+
+        public double mean() {
+            long total = 0;
+            long sum = 0;
+            for (int i = 0; i < counts.length - 1; i++) {
+                total += counts[i];
+                sum += counts[i] * (long) i;
+            }
+            return total == 0 ? 0 : sum / (double) total;
+        }
+
+        // 第percentile百分位的点击次数（不含放弃的对局）
+        public int percentile(int percentile) {
+            long total = total() - counts[counts.length - 1];
+            long target = (long) Math.ceil(percentile / 100.0 * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length - 1; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(target, 1)) {
+                    return i;
+                }
+            }
+            return 0;
+        }
+
+        public long abandoned() {
+            return counts[counts.length - 1];
+        }
+    }
+
+    // 把SplittableRandom包装成BoardEngine需要的Random，只用到nextInt(bound)，不走Random的原子种子
+    private static final class SplittableRandomAdapter extends Random {
+        private static final long serialVersionUID = 1L;
+
+        private final SplittableRandom random;
+
+        SplittableRandomAdapter(SplittableRandom random) {
+            this.random = random;
+        }
+
+        @Override
+        public int nextInt(int bound) {
+            return random.nextInt(bound);
+        }
+
+        @Override
+        protected int next(int bits) {
+            return random.nextInt() >>> (32 - bits);
+        }
+    }
+
+    // 机器人：记住翻开过的牌，有已知的一对就直接翻，否则翻一张没见过的牌，
+    // 如果记得和它相同的牌就翻那张，不记得就再翻一张没见过的
+    private static final class Bot {
+        private final Config config;
+        private final SplittableRandom random;
+        private final int[] firstKnown;  // 每种牌面记住的第一张位置，-1表示没有
+        private final int[] secondKnown; // 每种牌面记住的第二张位置
+        private final boolean[] known;   // 每个格子是否记得
+        private final int[] memory;      // 按记住的顺序保存的格子，环形队列
+        private int memoryHead = 0;
+        private int memoryCount = 0;
+
+        Bot(Config config, SplittableRandom random) {
+            this.config = config;
+            this.random = random;
+            int total = config.columnCount * config.rowCount;
+            firstKnown = new int[total / 2];
+            secondKnown = new int[total / 2];
+            known = new boolean[total];
+            memory = new int[total];
+        }
+
+        // 对局开始前清空记忆
+        void reset() {
+            Arrays.fill(firstKnown, -1);
+            Arrays.fill(secondKnown, -1);
+            Arrays.fill(known, false);
+            memoryHead = 0;
+            memoryCount = 0;
+        }
+
+        // 下完一局，返回点击次数，超过上限时返回-1
+        int play(BoardEngine engine) {
+            int total = engine.getTotalCards();
+            int maxClicks = config.maxClicks();
+            while (!engine.isGameOver()) {
+                if (engine.getClickCount() > maxClicks) {
+                    return -1;
+                }
+                forget();
+                int first = -1;
+                int second = -1;
+                // 有已知的一对就直接配对
+                for (int face = 0; face < firstKnown.length; face++) {
+                    if (firstKnown[face] >= 0 && secondKnown[face] >= 0) {
+                        first = firstKnown[face];
+                        second = secondKnown[face];
+                        break;
+                    }
+                }
+                if (first < 0) {
+                    first = pickUnknown(engine, total);
+                    int face = engine.getFace(first);
+                    engine.select(first);
+                    remember(first, face);
+                    int partner = firstKnown[face] == first ? secondKnown[face] : firstKnown[face];
+                    second = partner >= 0 ? partner : pickUnknown(engine, total);
+                    engine.select(second);
+                } else {
+                    engine.select(first);
+                    engine.select(second);
+                }
+                int secondFace = engine.getFace(second);
+                remember(second, secondFace);
+                if (engine.resolve() != BoardEngine.RESOLVE_MISMATCH) {
+                    forgetCell(first);
+                    forgetCell(second);
+                }
+            }
+            return engine.getClickCount();
+        }
+
+        // 随机选一张还背面朝上、也不记得的牌
+        private int pickUnknown(BoardEngine engine, int total) {
+            while (true) {
+                int index = random.nextInt(total);
+                if (engine.getState(index) == BoardEngine.STATE_HIDDEN && !known[index]) {
+                    return index;
+                }
+            }
+        }
+
+        private void remember(int index, int face) {
+            if (known[index]) {
+                return;
+            }
+            if (config.memoryModel == MEMORY_LIMITED && memoryCount >= config.memorySize) {
+                forgetCell(memory[memoryHead]); // 记满了，忘掉最早的
+            }
+            known[index] = true;
+            if (firstKnown[face] < 0) {
+                firstKnown[face] = index;
+            } else {
+                secondKnown[face] = index;
+            }
+            memory[(memoryHead + memoryCount) % memory.length] = index;
+            memoryCount++;
+        }
+
+        // 每回合开始时按模型遗忘
+        private void forget() {
+            if (config.memoryModel != MEMORY_FORGET) {
+                return;
+            }
+            int count = memoryCount;
+            for (int i = 0; i < count; i++) {
+                int index = memory[(memoryHead + i) % memory.length];
+                if (random.nextDouble() < config.forgetProbability) {
+                    forgetCell(index);
+                    // forgetCell把队列里后面的元素前移了，下标不变时继续检查下一个
+                    i--;
+                    count--;
+                }
+            }
+        }
+
+        private void forgetCell(int index) {
+            if (!known[index]) {
+                return;
+            }
+            known[index] = false;
+            for (int face = 0; face < firstKnown.length; face++) {
+                if (firstKnown[face] == index) {
+                    firstKnown[face] = secondKnown[face];
+                    secondKnown[face] = -1;
+                    break;
+                }
+                if (secondKnown[face] == index) {
+                    secondKnown[face] = -1;
+                    break;
+                }
+            }
+            // 从队列里移除，后面的前移保持顺序
+            for (int i = 0; i < memoryCount; i++) {
+                if (memory[(memoryHead + i) % memory.length] == index) {
+                    for (int j = i; j < memoryCount - 1; j++) {
+                        memory[(memoryHead + j) % memory.length] = memory[(memoryHead + j + 1) % memory.length];
+                    }
+                    memoryCount--;
+                    break;
+                }
+            }
+        }
+    }
+
+    // 跑games局，局数多时对半拆开，两半各自用split()出来的随机数
+    private static final class SimulationTask extends RecursiveTask<Histogram> {
+        private static final long serialVersionUID = 1L;
+
+        private final Config config;
+        private final int games;
+        private final SplittableRandom random;
+
+        SimulationTask(Config config, int games, SplittableRandom random) {
+            this.config = config;
+            this.games = games;
+            this.random = random;
+        }
+
+        @Override
+        protected Histogram compute() {
+            if (games > LEAF_GAMES) {
+                int half = games / 2;
+                SimulationTask left = new SimulationTask(config, half, random.split());
+                SimulationTask right = new SimulationTask(config, games - half, random.split());
+                left.fork();
+                Histogram result = right.compute();
+                result.add(left.join());
+                return result;
+            }
+            int total = config.columnCount * config.rowCount;
+            int[] facePool = new int[total / 2];
+            for (int i = 0; i < facePool.length; i++) {
+                facePool[i] = i; // 牌面用0..pairs-1，机器人直接拿来当下标
+            }
+            BoardEngine engine = new BoardEngine();
+            Bot bot = new Bot(config, random);
+            Random boardRandom = new SplittableRandomAdapter(random);
+            Histogram histogram = new Histogram(config.maxClicks());
+            for (int i = 0; i < games; i++) {
+                engine.newGame(config.columnCount, config.rowCount, facePool, boardRandom);
+                bot.reset();
+                int clicks = bot.play(engine);
+                histogram.counts[clicks < 0 ? histogram.counts.length - 1 : clicks]++;
+            }
+            return histogram;
+        }
+    }
+
+    // 在pool上跑games局，返回点击次数分布
+    public static Histogram simulate(ForkJoinPool pool, Config config, int games, long seed) {
+        return pool.invoke(new SimulationTask(config, games, new SplittableRandom(seed)));
+    }
+
+    public static void main(String[] args) {
+        int games = 1_000_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = System.nanoTime();
+        boolean scale = false;
+        for (int i = 0; i < args.length; i++) {
+            if ("-n".equals(args[i]) && i + 1 < args.length) {
+                games = Integer.parseInt(args[++i]);
+            } else if ("-t".equals(args[i]) && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if ("-seed".equals(args[i]) && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else if ("-scale".equals(args[i])) {
+                scale = true;
+            }
+        }
+        System.out.println(String.format(Locale.US, "seed=%d games=%d threads=%d", seed, games, threads));
+
+        if (scale) {
+            // 同一组参数，线程数从1翻倍到threads，看吞吐量随核心数的变化
+            Config config = new Config(6, 5, MEMORY_PERFECT, 0, 0);
+            for (int t = 1; ; t *= 2) {
+                int poolThreads = Math.min(t, threads);
+                ForkJoinPool pool = new ForkJoinPool(poolThreads);
+                run(pool, poolThreads, config, games, seed);
+                pool.shutdown();
+                if (poolThreads == threads) {
+                    break;
+                }
+            }
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        for (int[] level : LEVELS) {
+            run(pool, threads, new Config(level[0], level[1], MEMORY_PERFECT, 0, 0), games, seed);
+            run(pool, threads, new Config(level[0], level[1], MEMORY_LIMITED, 6, 0), games, seed);
+            run(pool, threads, new Config(level[0], level[1], MEMORY_FORGET, 0, 0.1), games, seed);
+        }
+        pool.shutdown();
+    }
+
+    private static void run(ForkJoinPool pool, int threads, Config config, int games, long seed) {
+        long startNanos = System.nanoTime();
+        Histogram histogram = simulate(pool, config, games, seed);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        System.out.println(String.format(Locale.US,
+                "level=%dx%d model=%s threads=%d games=%d mean=%.2f p10=%d p50=%d p90=%d p99=%d abandoned=%d"
+                        + " time_ms=%.1f games_per_sec=%.0f",
+                config.columnCount, config.rowCount, config.modelName(), threads, histogram.total(),
+                histogram.mean(), histogram.percentile(10), histogram.percentile(50), histogram.percentile(90),
+                histogram.percentile(99), histogram.abandoned(),
+                elapsedNanos / 1e6, histogram.total() * 1e9 / Math.max(elapsedNanos, 1)));
+    }
+}
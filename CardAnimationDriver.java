@@ -0,0 +1,132 @@
+package com.yao.memorytrain;
+
+import android.view.Choreographer;
+
+// 整个棋盘共用的动画时钟：一个Choreographer帧回调推进所有正在动画的卡片，
+// 代替每张卡片各自的三个ObjectAnimator。每帧不分配任何对象
+public class CardAnimationDriver implements Choreographer.FrameCallback {
+    // 同时持有硬件层的卡片上限，超过的卡片照常动画，只是不用层。
+    // 一局里同时动画的通常只有2~4张，上限防止大棋盘上占用过多显存
+    private static final int MAX_HARDWARE_LAYERS = 8;
+
+    private CardView[] activeCards = new CardView[16]; // 正在动画的卡片
+    private int activeCount = 0;
+    private boolean frameScheduled = false;
+    private int layerCount = 0; // 当前持有硬件层的卡片数
+    private boolean paused = false;
+    private long pauseNanos;
+
+    // 开始驱动一张卡片，卡片自己记录动画类型和开始时间
+    public void start(CardView card) {
+        if (indexOf(card) < 0) {
+            if (activeCount == activeCards.length) {
+                CardView[] grown = new CardView[activeCards.length * 2];
+                System.arraycopy(activeCards, 0, grown, 0, activeCount);
+                activeCards = grown;
+            }
+            activeCards[activeCount++] = card;
+        }
+        scheduleFrame();
+    }
+
+    // 停止驱动一张卡片，不会回调动画结束
+    public void cancel(CardView card) {
+        int index = indexOf(card);
+        if (index >= 0) {
+            removeAt(index);
+        }
+    }
+
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    // 页面不可见时暂停所有卡片动画，不再请求帧回调
+    public void pause() {
+        if (paused) {
+            return;
+        }
+        paused = true;
+        pauseNanos = System.nanoTime();
+        if (frameScheduled) {
+            frameScheduled = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    // 恢复后每张卡片的开始时间顺延暂停的时长，动画从暂停处接着播
+    public void resume() {
+        if (!paused) {
+            return;
+        }
+        paused = false;
+        long pausedNanos = System.nanoTime() - pauseNanos;
+        for (int i = 0; i < activeCount; i++) {
+            activeCards[i].shiftAnimationStart(pausedNanos);
+        }
+        if (activeCount > 0) {
+            scheduleFrame();
+        }
+    }
+
+    // 卡片动画开始时申请硬件层，返回false表示已达上限
+    boolean acquireLayer() {
+        if (layerCount >= MAX_HARDWARE_LAYERS) {
+            return false;
+        }
+        layerCount++;
+        return true;
+    }
+
+    // 动画结束或取消时归还
+    void releaseLayer() {
+        if (layerCount > 0) {
+            layerCount--;
+        }
+    }
+
+    public int getLayerCount() {
+        return layerCount;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        int i = 0;
+        while (i < activeCount) {
+            CardView card = activeCards[i];
+            // 回调里可能会开始新的动画（比如判定后翻回），新卡片会追加到数组末尾，本帧也会处理到
+            if (card.onAnimationFrame(frameTimeNanos)) {
+                i++;
+            } else if (i < activeCount && activeCards[i] == card) {
+                removeAt(i);
+            }
+        }
+        if (activeCount > 0) {
+            scheduleFrame();
+        }
+    }
+
+    private void scheduleFrame() {
+        if (!frameScheduled && !paused) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    private int indexOf(CardView card) {
+        for (int i = 0; i < activeCount; i++) {
+            if (activeCards[i] == card) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // 用最后一个元素填补空位，顺序无关紧要
+    private void removeAt(int index) {
+        activeCount--;
+        activeCards[index] = activeCards[activeCount];
+        activeCards[activeCount] = null;
+    }
+}
@@ -0,0 +1,115 @@
+package com.yao.memorytrain;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.util.SparseArray;
+
+// 卡片图集：把所有卡片图片按卡片尺寸画到同一张Bitmap上，
+// 整个棋盘只上传一次纹理，CardView只画其中的一个小矩形
+public class CardAtlas {
+    private final Bitmap bitmap;
+    private final SparseArray<Rect> regions; // 资源ID -> 在图集中的位置
+
+    private CardAtlas(Bitmap bitmap, SparseArray<Rect> regions) {
+        this.bitmap = bitmap;
+        this.regions = regions;
+    }
+
+    // 构建图集，比较耗时，需要在后台线程调用
+    public static CardAtlas build(Resources resources, int[] resIds, int cellWidth, int cellHeight,
+                                  Bitmap.Config config) {
+        if (cellWidth <= 0 || cellHeight <= 0 || resIds.length == 0) {
+            return null;
+        }
+        int columns = (int) Math.ceil(Math.sqrt(resIds.length));
+        int rows = (resIds.length + columns - 1) / columns;
+        Bitmap atlasBitmap = Bitmap.createBitmap(columns * cellWidth, rows * cellHeight, config);
+        Canvas canvas = new Canvas(atlasBitmap);
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        SparseArray<Rect> regions = new SparseArray<>(resIds.length);
+
+        for (int i = 0; i < resIds.length; i++) {
+            int resId = resIds[i];
+            Bitmap source = CardImageCache.decodeSampled(resources, resId, cellWidth, cellHeight, config);
+            if (source == null) {
+                continue;
+            }
+
+            int left = (i % columns) * cellWidth;
+            int top = (i / columns) * cellHeight;
+            Rect dst = new Rect(left, top, left + cellWidth, top + cellHeight);
+            canvas.drawBitmap(source, null, dst, paint);
+            source.recycle(); // 已经画进图集，单张图不再需要
+            regions.put(resId, dst);
+        }
+        return new CardAtlas(atlasBitmap, regions);
+    }
+
+    public boolean contains(int resId) {
+        return regions.get(resId) != null;
+    }
+
+    public Rect getRegion(int resId) {
+        return regions.get(resId);
+    }
+
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    public int getByteCount() {
+        return bitmap.getByteCount();
+    }
+
+    // 绘制图集中某一块区域的Drawable，每张卡片持有自己的实例，换卡时只改区域不重新创建
+    public static class RegionDrawable extends Drawable {
+        private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        private CardAtlas atlas;
+        private Rect region;
+
+        public void setRegion(CardAtlas atlas, int resId) {
+            this.atlas = atlas;
+            this.region = atlas.getRegion(resId);
+            invalidateSelf();
+        }
+
+        @Override
+        public void draw(Canvas canvas) {
+            if (atlas == null || region == null) {
+                return;
+            }
+            canvas.drawBitmap(atlas.bitmap, region, getBounds(), paint);
+        }
+
+        @Override
+        public int getIntrinsicWidth() {
+            return region != null ? region.width() : -1;
+        }
+
+        @Override
+        public int getIntrinsicHeight() {
+            return region != null ? region.height() : -1;
+        }
+
+        @Override
+        public void setAlpha(int alpha) {
+            paint.setAlpha(alpha);
+        }
+
+        @Override
+        public void setColorFilter(ColorFilter colorFilter) {
+            paint.setColorFilter(colorFilter);
+        }
+
+        @Override
+        public int getOpacity() {
+            return PixelFormat.TRANSLUCENT;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.yao.memorytrain;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 卡片图片缓存，按资源ID+目标尺寸缓存降采样后的Bitmap，所有卡片共用同一份（包括背面）
+// 正面图片在后台线程预解码，翻牌时只从缓存取，不在UI线程解码
+// 开启图集模式后，所有图片打包进一张CardAtlas，不再逐张缓存
+// 内存紧张时可以降档：先换成RGB_565（每像素2字节），再降到一半分辨率，内存恢复后再升回来
+public class CardImageCache {
+    // 内存档位，数值越大占用越少
+    public static final int TIER_FULL = 0;   // ARGB_8888，卡片尺寸
+    public static final int TIER_RGB565 = 1; // RGB_565，卡片尺寸，内存减半
+    public static final int TIER_HALF = 2;   // RGB_565，一半分辨率，内存再减到1/4
+
+    // 后台解码完成的回调，在主线程执行
+    public interface OnImageReadyListener {
+        void onImageReady(int resId);
+    }
+
+    private final Resources resources;
+    private final LruCache<Long, Bitmap> cache;
+    private final ExecutorService decodeExecutor = Executors.newFixedThreadPool(2);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Set<Long> pendingKeys = new HashSet<>(); // 正在后台解码的key，避免重复提交
+
+    private int targetWidth;
+    private int targetHeight;
+    private int memoryTier = TIER_FULL;
+
+    private int[] atlasResIds; // 不为null表示开启图集模式
+    private CardAtlas atlas; // 当前尺寸的图集，只在主线程读写
+    private boolean atlasBuilding = false;
+
+    // 统计数据，方便观察缓存效果
+    private int hitCount = 0;
+    private int missCount = 0;
+    private final AtomicInteger decodeCount = new AtomicInteger();
+    private int mainThreadDecodeCount = 0; // 在UI线程上同步解码的次数，正常只有背面的第一次
+
+    public CardImageCache(Resources resources) {
+        this.resources = resources;
+        int maxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE); // 最多占用1/8的堆
+        cache = new LruCache<Long, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Long key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    // 设置卡片显示尺寸，尺寸变化时旧尺寸的图片不会再用到，直接清掉
+    public void setTargetSize(int width, int height) {
+        if (width == targetWidth && height == targetHeight) {
+            return;
+        }
+        targetWidth = width;
+        targetHeight = height;
+        cache.evictAll();
+        atlas = null; // 旧尺寸的图集不能用了，下次preload重新构建
+    }
+
+    // 切换内存档位，返回档位是否变了。变了时旧档位的图片全部清掉，
+    // 调用方需要重新preload，新图准备好之前卡片继续用手里的旧图
+    public boolean setMemoryTier(int tier) {
+        if (tier == memoryTier) {
+            return false;
+        }
+        memoryTier = tier;
+        cache.evictAll();
+        atlas = null;
+        return true;
+    }
+
+    // 放掉一张图的缓存，用于已经配对消失、不会再显示的牌面。图集模式下图集是一整张，不单独放
+    public void evict(int resId) {
+        cache.remove(makeKey(resId, targetWidth, targetHeight, memoryTier));
+    }
+
+    // 开启图集模式，resIds是需要打包的全部图片（所有正面加背面）
+    public void setAtlasEnabled(boolean enabled, int[] resIds) {
+        atlasResIds = enabled ? resIds : null;
+        if (!enabled) {
+            atlas = null;
+        }
+    }
+
+    // 这张图是否打包在图集里。图集是一整张Bitmap，其中单张图的内存只能随整个图集一起放掉
+    public boolean isInAtlas(int resId) {
+        return atlasResIds != null && !GeneratedFaceFactory.isGenerated(resId);
+    }
+
+    // 当前尺寸的图集，还没构建好或未开启时返回null
+    public CardAtlas getAtlas() {
+        return atlas;
+    }
+
+    // 只从缓存取，不解码，还没准备好时返回null。翻牌等热路径只能用这个
+    public Bitmap peekBitmap(int resId) {
+        Bitmap bitmap = cache.get(makeKey(resId, targetWidth, targetHeight, memoryTier));
+        if (bitmap != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return bitmap;
+    }
+
+    // 在后台线程解码这些图片，每张解码完成后在主线程回调listener
+    public void preload(int[] resIds, OnImageReadyListener listener) {
+        for (int i = 0; i < resIds.length; i++) {
+            preloadOne(resIds[i], listener);
+        }
+    }
+
+    // 在后台线程解码一张图片，已经缓存或正在解码时什么也不做
+    public void preloadOne(int resId, OnImageReadyListener listener) {
+        final int width = targetWidth;
+        final int height = targetHeight;
+        final int tier = memoryTier;
+        if (atlasResIds != null && !GeneratedFaceFactory.isGenerated(resId)) {
+            preloadAtlas(width, height, tier, listener); // 图集模式下资源图片都在图集里，只需要单独生成程序牌面
+            return;
+        }
+        final long key = makeKey(resId, width, height, tier);
+        if (cache.get(key) != null) {
+            return;
+        }
+        synchronized (pendingKeys) {
+            if (!pendingKeys.add(key)) {
+                return; // 同一张图已经在解码了（每张图在一局里出现两次）
+            }
+        }
+        decodeExecutor.execute(() -> {
+            Bitmap bitmap = decode(resId, width, height, tier);
+            if (bitmap != null) {
+                cache.put(key, bitmap);
+            }
+            synchronized (pendingKeys) {
+                pendingKeys.remove(key);
+            }
+            mainHandler.post(() -> {
+                // 解码期间尺寸或档位变了，说明是旧的图，不用通知
+                if (bitmap != null && width == targetWidth && height == targetHeight && tier == memoryTier
+                        && listener != null) {
+                    listener.onImageReady(resId);
+                }
+            });
+        });
+    }
+
+    // 图集模式下整张图集一次构建，完成后对图集里的每张图回调listener
+    private void preloadAtlas(int width, int height, int tier, OnImageReadyListener listener) {
+        if (atlas != null || atlasBuilding) {
+            return;
+        }
+        atlasBuilding = true;
+        final int[] resIds = atlasResIds;
+        decodeExecutor.execute(() -> {
+            CardAtlas built = CardAtlas.build(resources, resIds, scaleForTier(width, tier),
+                    scaleForTier(height, tier), configForTier(tier));
+            decodeCount.addAndGet(resIds.length);
+            mainHandler.post(() -> {
+                atlasBuilding = false;
+                if (built == null || atlasResIds == null) {
+                    return; // 构建失败或关闭了图集模式
+                }
+                if (width != targetWidth || height != targetHeight || tier != memoryTier) {
+                    // 构建期间尺寸或档位变了，这期间的preload都被上面的atlasBuilding挡掉了，按新的重新构建
+                    preloadAtlas(targetWidth, targetHeight, memoryTier, listener);
+                    return;
+                }
+                atlas = built;
+                if (listener != null) {
+                    for (int i = 0; i < resIds.length; i++) {
+                        listener.onImageReady(resIds[i]);
+                    }
+                }
+            });
+        });
+    }
+
+    // 取图片，缓存中没有时同步解码
+    public Bitmap getBitmap(int resId) {
+        long key = makeKey(resId, targetWidth, targetHeight, memoryTier);
+        Bitmap bitmap = cache.get(key);
+        if (bitmap != null) {
+            hitCount++;
+            return bitmap;
+        }
+        missCount++;
+        bitmap = decode(resId, targetWidth, targetHeight, memoryTier);
+        if (bitmap != null) {
+            cache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    private Bitmap decode(int resId, int width, int height, int tier) {
+        decodeCount.incrementAndGet();
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            mainThreadDecodeCount++;
+        }
+        return decodeSampled(resources, resId, scaleForTier(width, tier), scaleForTier(height, tier),
+                configForTier(tier));
+    }
+
+    private static int scaleForTier(int size, int tier) {
+        return tier >= TIER_HALF ? Math.max(size / 2, 1) : size;
+    }
+
+    private static Bitmap.Config configForTier(int tier) {
+        return tier >= TIER_RGB565 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+    }
+
+    // 按目标尺寸降采样解码，图集构建也用这个。程序生成的牌面直接按目标尺寸绘制
+    static Bitmap decodeSampled(Resources resources, int resId, int width, int height, Bitmap.Config config) {
+        if (GeneratedFaceFactory.isGenerated(resId)) {
+            return GeneratedFaceFactory.render(resId, width, height, config);
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false; // 不按屏幕密度放大，由inSampleSize控制尺寸
+        options.inPreferredConfig = config; // 卡片图没有透明部分，RGB_565只损失一点色阶
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resId, options);
+
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, width, height);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeResource(resources, resId, options);
+    }
+
+    // 计算最大的2的幂采样率，保证解码后的图片不小于目标尺寸
+    static int calculateInSampleSize(int srcWidth, int srcHeight, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        if (reqWidth <= 0 || reqHeight <= 0) {
+            return inSampleSize;
+        }
+        while (srcWidth / (inSampleSize * 2) >= reqWidth && srcHeight / (inSampleSize * 2) >= reqHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    // 高32位是资源ID，低32位是档位（2位）和宽高（各15位）
+    private static long makeKey(int resId, int width, int height, int tier) {
+        return ((long) resId << 32) | ((long) (tier & 0x3) << 30) | ((long) (width & 0x7FFF) << 15)
+                | (height & 0x7FFF);
+    }
+
+    public void clear() {
+        cache.evictAll();
+    }
+
+    // Activity销毁时调用，停止后台解码
+    public void shutdown() {
+        decodeExecutor.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    // Getters
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    public int getMissCount() {
+        return missCount;
+    }
+
+    public int getDecodeCount() {
+        return decodeCount.get();
+    }
+
+    public int getMainThreadDecodeCount() {
+        return mainThreadDecodeCount;
+    }
+
+    public int getMemoryTier() {
+        return memoryTier;
+    }
+
+    // 缓存和图集中常驻内存的Bitmap字节数
+    public int getSizeBytes() {
+        return cache.size() + (atlas != null ? atlas.getByteCount() : 0);
+    }
+}
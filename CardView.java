@@ -1,32 +1,69 @@
 package com.yao.memorytrain;
 
-import android.animation.Animator;
-import android.animation.AnimatorListenerAdapter;
-import android.animation.ObjectAnimator;
-import android.animation.PropertyValuesHolder;
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
-import android.os.Handler;
 import android.util.AttributeSet;
-import android.util.Log;
-import android.view.View;
 import android.view.animation.AccelerateDecelerateInterpolator;
 
 import androidx.appcompat.widget.AppCompatImageView;
 
-// 自定义CardView，继承自AppCompatImageView，封装了翻牌动画
+// 自定义CardView，继承自AppCompatImageView，封装了翻牌动画。
+// 动画由棋盘共用的CardAnimationDriver逐帧推进，卡片只记录自己的动画状态
 public class CardView extends AppCompatImageView {
+    // 动画结束回调，游戏流程由这些回调驱动，而不是固定的延时
+    public interface OnCardAnimationListener {
+        void onFlipEnd(CardView card);
+
+        void onVanishEnd(CardView card);
+
+        void onAppearEnd(CardView card);
+    }
+
     private static final String TAG = FlipCardGameActivity.TAG;
+    private static final int PLACEHOLDER_COLOR = 0xFFE0E0E0; // 正面图片还没解码好时显示的占位色
+    private static final float CAMERA_DISTANCE = 8000; // 和AnimationStressActivity、BoardView用的经验值相同，按屏幕密度缩放
+
+    // 动画类型
+    private static final int ANIM_NONE = 0;
+    private static final int ANIM_FLIP_OUT = 1; // 翻牌前半段：转到侧面
+    private static final int ANIM_FLIP_IN = 2;  // 翻牌后半段：从侧面转回来
+    private static final int ANIM_VANISH = 3;   // 旋转缩小淡出
+    private static final int ANIM_APPEAR = 4;   // 无尽模式补牌：背面放大淡入
+    // 每种动画在systrace里的异步区间名，下标是动画类型
+    private static final String[] TRACE_NAMES = {null, "CardView.flipOut", "CardView.flipIn", "CardView.vanish",
+            "CardView.appear"};
+
+    private static final long FLIP_DURATION_NANOS = 200_000_000L;    // 每半段200ms
+    private static final long VANISH_DURATION_NANOS = 1000_000_000L; // 消失动画1000ms
+    private static final long APPEAR_DURATION_NANOS = 300_000_000L;  // 补牌出现300ms
+    // 所有卡片共用，和原来ObjectAnimator的曲线一致
+    private static final AccelerateDecelerateInterpolator INTERPOLATOR = new AccelerateDecelerateInterpolator();
 
     private int cardId; // 用于判断是否匹配的唯一ID
     private int frontImageResId;
     private int backImageResId;
     private boolean isFrontShowing = false; // 当前是否显示正面
     private volatile boolean isAnimate = false;    // 是否正在动画中
+    private OnCardAnimationListener animationListener;
 
-    private ObjectAnimator flipOutAnimator;
-    private ObjectAnimator flipInAnimator;
-    private ObjectAnimator vanishAnimator; // 消失动画
+    private CardAnimationDriver animationDriver; // 棋盘共用的动画时钟
+    private int animType = ANIM_NONE;
+    private long animStartNanos = -1; // 为-1表示在下一帧开始
+    private float flipFrom; // 当前半段的起止角度
+    private float flipTo;
+    private boolean hasLayer = false; // 动画期间是否持有硬件层
+    private final int traceCookie = System.identityHashCode(this); // 区分不同卡片的同名Trace区间
+
+    private CardImageCache imageCache; // 共享的图片缓存，为null时退回setImageResource
+    private Drawable frontDrawable;
+    private Drawable backDrawable;
+    private Drawable placeholderDrawable;
+    private CardAtlas.RegionDrawable frontRegion; // 图集模式下使用，换卡时只改区域
+    private CardAtlas.RegionDrawable backRegion;
+    private boolean imagesReleased = false; // 内存紧张时放掉了图片，下次setCard再绑定
 
     public CardView(Context context) {
         super(context);
@@ -44,12 +81,10 @@ public class CardView extends AppCompatImageView {
     }
 
     private void init() {
-        // 初始化翻牌动画
-        setupFlipAnimations();
-        // 初始化消失动画
-        setupVanishAnimation();
         // 默认显示背面
         setImageResource(R.drawable.card_back); // 确保你有这个资源
+        // 不设置的话高密度屏上翻牌时透视变形太大，卡片会"扑"到屏幕外
+        setCameraDistance(CAMERA_DISTANCE * getResources().getDisplayMetrics().density);
     }
 
     public void setCard(int cardId, int frontImageResId, int backImageResId) {
@@ -57,6 +92,8 @@ public class CardView extends AppCompatImageView {
         this.cardId = cardId;
         this.frontImageResId = frontImageResId;
         this.backImageResId = backImageResId;
+        // 视图会跨局复用，先停掉上一局可能还在跑的动画，不回调结束事件
+        cancelAnimation();
         this.isFrontShowing = false; // 初始化为背面
         this.isAnimate = false;
         // 确保视图在设置新卡片时重置状态
@@ -64,81 +101,117 @@ public class CardView extends AppCompatImageView {
         this.setScaleY(1f);
         this.setAlpha(1f);
         this.setRotationY(0f);
-        setImageResource(backImageResId);
+        this.setRotation(0f);
+        imagesReleased = false;
+        bindDrawables(false);
+        showFace(false);
+        setEnabled(true);
         setVisibility(VISIBLE);
     }
 
-    private void setupFlipAnimations() {
-        flipOutAnimator = ObjectAnimator.ofFloat(this, "rotationY", 0f, 90f);
-        flipOutAnimator.setDuration(200);
-        flipOutAnimator.setInterpolator(new AccelerateDecelerateInterpolator());
-        flipOutAnimator.addListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationStart(Animator animation) {
-                Logd("onFlipAnimationStart...");
-                isAnimate = true;
-            }
+    public void setOnCardAnimationListener(OnCardAnimationListener listener) {
+        this.animationListener = listener;
+    }
 
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                isFrontShowing = !isFrontShowing;
-                setImageResource(isFrontShowing ? frontImageResId : backImageResId);
-                flipInAnimator.start();
-            }
-        });
-
-        flipInAnimator = ObjectAnimator.ofFloat(this, "rotationY", -90f, 0f);
-        flipInAnimator.setDuration(200);
-        flipInAnimator.setInterpolator(new AccelerateDecelerateInterpolator());
-        flipInAnimator.addListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                Logd("onFlipAnimationEnd...");
-                isAnimate = false;
-                if (isFrontShowing) {
-                    setEnabled(false); // 翻开后禁止点击
-                } else {
-                    setEnabled(true); // 翻开后禁止点击
-                }
-            }
-        });
-    }
-
-    private void setupVanishAnimation() {
-        vanishAnimator = ObjectAnimator.ofPropertyValuesHolder(
-                this,
-                PropertyValuesHolder.ofFloat( View.ROTATION, 0f, 360f),
-                PropertyValuesHolder.ofFloat("scaleX", 1f, 0f),
-                PropertyValuesHolder.ofFloat("scaleY", 1f, 0f),
-                PropertyValuesHolder.ofFloat("alpha", 1f, 0f)
-        );
-        vanishAnimator.setDuration(1000);
-        vanishAnimator.addListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationStart(Animator animation) {
-                Logd("onAnimationStart...");
-                isAnimate = true;
+    public void setAnimationDriver(CardAnimationDriver animationDriver) {
+        this.animationDriver = animationDriver;
+    }
+
+    // 单独使用时没有设置共用时钟，自己建一个
+    private CardAnimationDriver getAnimationDriver() {
+        if (animationDriver == null) {
+            animationDriver = new CardAnimationDriver();
+        }
+        return animationDriver;
+    }
+
+    public void setImageCache(CardImageCache imageCache) {
+        this.imageCache = imageCache;
+    }
+
+    // 从缓存取出正反面图片，Bitmap没变时沿用原来的Drawable。
+    // 背面所有卡片共用，第一次同步解码一次即可；正面由后台预解码，没准备好时先为null。
+    // keepStale为true时是同一张牌换了尺寸：新尺寸的图还没好就继续用旧图，也不同步解码
+    private void bindDrawables(boolean keepStale) {
+        if (imageCache == null) {
+            frontDrawable = null;
+            backDrawable = null;
+            return;
+        }
+        CardAtlas atlas = imageCache.getAtlas();
+        if (atlas != null && atlas.contains(frontImageResId) && atlas.contains(backImageResId)) {
+            if (frontRegion == null) {
+                frontRegion = new CardAtlas.RegionDrawable();
+                backRegion = new CardAtlas.RegionDrawable();
             }
+            frontRegion.setRegion(atlas, frontImageResId);
+            backRegion.setRegion(atlas, backImageResId);
+            frontDrawable = frontRegion;
+            backDrawable = backRegion;
+            return;
+        }
+        Bitmap front = imageCache.peekBitmap(frontImageResId);
+        Bitmap back = keepStale ? imageCache.peekBitmap(backImageResId) : imageCache.getBitmap(backImageResId);
+        if (front != null || !keepStale) {
+            frontDrawable = wrapBitmap(frontDrawable, front);
+        }
+        if (back != null || !keepStale) {
+            backDrawable = wrapBitmap(backDrawable, back);
+        }
+    }
 
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                Logd("onAnimationEnd...");
-                isAnimate = false;
-                setVisibility(INVISIBLE); // 动画结束后隐藏
+    // 后台解码完成通知，如果用到了这张图就重新绑定（可能是单张图，也可能是整张图集）
+    public void onImageReady(int resId) {
+        if (imageCache == null || imagesReleased || (resId != frontImageResId && resId != backImageResId)) {
+            return;
+        }
+        bindDrawables(true);
+        showFace(isFrontShowing); // 如果正显示着占位色或旧尺寸的图，替换成新的图片
+    }
+
+    // 内存紧张时调用：已经配对消失的卡片不会再显示，放掉对图片的引用，缓存里清掉后Bitmap才能真正回收。
+    // 只处理消失动画已经结束的卡片，返回是否放掉了
+    public boolean releaseImages() {
+        if (getVisibility() != INVISIBLE || isAnimate || imagesReleased) {
+            return false;
+        }
+        imagesReleased = true;
+        frontDrawable = null;
+        backDrawable = null;
+        setImageDrawable(null);
+        return true;
+    }
+
+    private Drawable wrapBitmap(Drawable current, Bitmap bitmap) {
+        if (bitmap == null) {
+            return null;
+        }
+        if (current instanceof BitmapDrawable && ((BitmapDrawable) current).getBitmap() == bitmap) {
+            return current;
+        }
+        return new BitmapDrawable(getResources(), bitmap);
+    }
+
+    private void showFace(boolean front) {
+        Drawable drawable = front ? frontDrawable : backDrawable;
+        if (drawable != null) {
+            setImageDrawable(drawable);
+        } else if (imageCache != null) {
+            // 图片还没解码好，不阻塞UI线程，先显示占位色，等onImageReady再替换
+            if (placeholderDrawable == null) {
+                placeholderDrawable = new ColorDrawable(PLACEHOLDER_COLOR);
             }
-        });
+            setImageDrawable(placeholderDrawable);
+        } else {
+            setImageResource(front ? frontImageResId : backImageResId);
+        }
     }
 
     public void flipCard() {
         isAnimate = true; // 开始动画时设为true
-        if (isFrontShowing) {
-            flipOutAnimator.setFloatValues(0f, 90f);
-            flipInAnimator.setFloatValues(-90f, 0f);
-        } else {
-            flipOutAnimator.setFloatValues(0f, -90f);
-            flipInAnimator.setFloatValues(90f, 0f);
-        }
-        flipOutAnimator.start();
+        Logd("onFlipAnimationStart...");
+        // 正面翻到背面向正方向转，背面翻到正面向反方向转
+        startAnimation(ANIM_FLIP_OUT, 0f, isFrontShowing ? 90f : -90f);
     }
 
     // 翻回背面, 用isFrontShowing来区分动画效果
@@ -151,7 +224,192 @@ public class CardView extends AppCompatImageView {
             return;
         }
         setEnabled(false); // 不再响应点击
-        vanishAnimator.start();
+        isAnimate = true;
+        Logd("onAnimationStart...");
+        startAnimation(ANIM_VANISH, 0f, 0f);
+    }
+
+    // 无尽模式补牌后播放出现动画，调用前先用setCard换上新牌
+    public void appearCard() {
+        isAnimate = true;
+        setScaleX(0f);
+        setScaleY(0f);
+        setAlpha(0f);
+        startAnimation(ANIM_APPEAR, 0f, 0f);
+    }
+
+    // 只换正面图片，不动当前的动画和显示。用于无尽模式补牌时背面朝上的牌被换了牌面
+    public void setFrontImage(int cardId, int frontImageResId) {
+        this.cardId = cardId;
+        this.frontImageResId = frontImageResId;
+        if (imageCache != null && !imagesReleased) {
+            // 新图还没解码好时不能留着旧牌面，翻开时先显示占位色，解码好后onImageReady再换
+            frontDrawable = null;
+            bindDrawables(true);
+        }
+    }
+
+    // 不播动画，直接显示某个状态，用于列表复用时按棋盘状态重新绑定
+    public void showState(boolean front, boolean matched) {
+        isFrontShowing = front || matched;
+        showFace(isFrontShowing);
+        setEnabled(!isFrontShowing);
+        setVisibility(matched ? INVISIBLE : VISIBLE);
+    }
+
+    // 停掉当前动画，不回调结束事件，同时归还硬件层
+    public void cancelAnimation() {
+        if (animType != ANIM_NONE) {
+            getAnimationDriver().cancel(this);
+            setAnimType(ANIM_NONE);
+        }
+        isAnimate = false;
+    }
+
+    // 立即结束当前动画并照常回调，用于卡片被回收等场景
+    public void endAnimation() {
+        if (animType == ANIM_NONE) {
+            return;
+        }
+        getAnimationDriver().cancel(this);
+        if (animStartNanos < 0) {
+            animStartNanos = 0;
+        }
+        // 传入一个足够晚的时间，翻牌的两个半段和消失动画都会走到结束分支
+        onAnimationFrame(animStartNanos + 2 * FLIP_DURATION_NANOS + VANISH_DURATION_NANOS);
+    }
+
+    private void startAnimation(int type, float from, float to) {
+        setAnimType(type);
+        animStartNanos = -1;
+        flipFrom = from;
+        flipTo = to;
+        getAnimationDriver().start(this);
+    }
+
+    // 动画暂停后恢复时由CardAnimationDriver调用
+    void shiftAnimationStart(long deltaNanos) {
+        if (animStartNanos >= 0) {
+            animStartNanos += deltaNanos;
+        }
+    }
+
+    // 切换动画阶段，同时结束上一阶段的Trace区间并开始新阶段的。
+    // 动画开始时申请硬件层，结束或取消时释放，翻牌的两个半段之间不释放
+    private void setAnimType(int type) {
+        if (animType != ANIM_NONE) {
+            GameLog.endAsyncSection(TRACE_NAMES[animType], traceCookie);
+        }
+        animType = type;
+        if (type != ANIM_NONE) {
+            GameLog.beginAsyncSection(TRACE_NAMES[type], traceCookie);
+            if (!hasLayer && getAnimationDriver().acquireLayer()) {
+                // 旋转和缩放只变换已经画好的层，淡出也不用再离屏绘制
+                hasLayer = true;
+                setLayerType(LAYER_TYPE_HARDWARE, null);
+            }
+        } else if (hasLayer) {
+            hasLayer = false;
+            setLayerType(LAYER_TYPE_NONE, null);
+            getAnimationDriver().releaseLayer();
+        }
+    }
+
+    // 由CardAnimationDriver每帧调用，返回false表示动画已结束，可以从时钟中移除
+    boolean onAnimationFrame(long frameTimeNanos) {
+        if (animStartNanos < 0) {
+            animStartNanos = frameTimeNanos;
+        }
+        long elapsed = frameTimeNanos - animStartNanos;
+        switch (animType) {
+            case ANIM_FLIP_OUT:
+                if (elapsed < FLIP_DURATION_NANOS) {
+                    setRotationY(lerp(flipFrom, flipTo, fraction(elapsed, FLIP_DURATION_NANOS)));
+                    return true;
+                }
+                // 转到侧面，换图并接着播后半段，后半段从前半段结束的时刻算起
+                isFrontShowing = !isFrontShowing;
+                showFace(isFrontShowing); // 图片在setCard时已经准备好，这里不再解码
+                setAnimType(ANIM_FLIP_IN);
+                animStartNanos += FLIP_DURATION_NANOS;
+                flipFrom = -flipTo;
+                flipTo = 0f;
+                return onAnimationFrame(frameTimeNanos);
+            case ANIM_FLIP_IN:
+                if (elapsed < FLIP_DURATION_NANOS) {
+                    setRotationY(lerp(flipFrom, flipTo, fraction(elapsed, FLIP_DURATION_NANOS)));
+                    return true;
+                }
+                setRotationY(0f);
+                setAnimType(ANIM_NONE);
+                onFlipEnd();
+                return animType != ANIM_NONE; // 回调里可能马上开始了新动画
+            case ANIM_VANISH:
+                if (elapsed < VANISH_DURATION_NANOS) {
+                    float f = fraction(elapsed, VANISH_DURATION_NANOS);
+                    setRotation(360f * f);
+                    setScaleX(1f - f);
+                    setScaleY(1f - f);
+                    setAlpha(1f - f);
+                    return true;
+                }
+                setRotation(360f);
+                setScaleX(0f);
+                setScaleY(0f);
+                setAlpha(0f);
+                setAnimType(ANIM_NONE);
+                onVanishEnd();
+                return animType != ANIM_NONE;
+            case ANIM_APPEAR:
+                if (elapsed < APPEAR_DURATION_NANOS) {
+                    float f = fraction(elapsed, APPEAR_DURATION_NANOS);
+                    setScaleX(f);
+                    setScaleY(f);
+                    setAlpha(f);
+                    return true;
+                }
+                setScaleX(1f);
+                setScaleY(1f);
+                setAlpha(1f);
+                setAnimType(ANIM_NONE);
+                isAnimate = false;
+                if (animationListener != null) {
+                    animationListener.onAppearEnd(this);
+                }
+                return animType != ANIM_NONE;
+            default:
+                return false;
+        }
+    }
+
+    private void onFlipEnd() {
+        Logd("onFlipAnimationEnd...");
+        isAnimate = false;
+        if (isFrontShowing) {
+            setEnabled(false); // 翻开后禁止点击
+        } else {
+            setEnabled(true); // 翻回背面后恢复点击
+        }
+        if (animationListener != null) {
+            animationListener.onFlipEnd(this);
+        }
+    }
+
+    private void onVanishEnd() {
+        Logd("onAnimationEnd...");
+        isAnimate = false;
+        setVisibility(INVISIBLE); // 动画结束后隐藏
+        if (animationListener != null) {
+            animationListener.onVanishEnd(this);
+        }
+    }
+
+    private static float fraction(long elapsed, long duration) {
+        return INTERPOLATOR.getInterpolation(elapsed / (float) duration);
+    }
+
+    private static float lerp(float from, float to, float fraction) {
+        return from + (to - from) * fraction;
     }
 
     // Getters
@@ -168,6 +426,6 @@ public class CardView extends AppCompatImageView {
     }
 
     void Logd(String msg) {
-        Log.d(TAG, msg);
+        GameLog.d(TAG, msg);
     }
 }
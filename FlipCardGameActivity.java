@@ -1,207 +1,1177 @@
 package com.yao.memorytrain;
 
+import android.app.ActivityManager;
 import android.os.Bundle;
-import android.os.Handler;
 import android.os.SystemClock;
-import android.util.Log;
+import android.text.InputType;
+import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.EditText;
 import android.widget.GridLayout;
+import android.widget.RadioButton;
 import android.widget.RadioGroup;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class FlipCardGameActivity extends AppCompatActivity {
+public class FlipCardGameActivity extends AppCompatActivity
+        implements BoardEngine.Listener, CardView.OnCardAnimationListener, BoardView.OnBoardEventListener {
     public static final String TAG = "MemoryTrain";
 
+    // 棋盘渲染方式
+    private static final int RENDER_MODE_VIEWS = 0;  // GridLayout，每张卡片一个CardView
+    private static final int RENDER_MODE_CANVAS = 1; // BoardView，整个棋盘在一个View里绘制
+    private static final int RENDER_MODE_RECYCLER = 2; // 大棋盘：RecyclerView，只有可见的格子有CardView
+    private static final int MAX_GRID_CARDS = 36; // 超过这个数量的棋盘自动使用RENDER_MODE_RECYCLER
+    private static final int CARD_MARGIN_H = 8; // GridLayout里卡片的左右、上下边距（px）
+    private static final int CARD_MARGIN_V = 4;
+    private static final int CARDS_PER_FRAME = 8; // 需要新建CardView时每帧最多建这么多，剩下的下一帧接着建
+    private static final String STARTUP_STATS_FILE = "startup_stats.csv";
+    private static final String FRAME_STATS_FILE = "frame_stats.csv";
+
+    // 存档：Bundle里的key和进程被杀后恢复用的本地文件
+    private static final String KEY_SNAPSHOT = "game_snapshot";
+    private static final String SNAPSHOT_FILE = "game_snapshot.bin";
+    private static final int SNAPSHOT_HEADER_SIZE = 4 + 8 + 8 + 1; // 版本号、种子、已用时间、渲染方式
+    private static final String RESULTS_FILE = "results.bin";
+    private static final int RECENT_GAMES = 10; // 统计页面显示当前级别最近几局的趋势
+    private static final String REPLAY_DIR = "replays"; // 每局的操作记录，可以用ReplayRunner回放
+    private static final int MAX_REPLAY_FILES = 50; // 只保留最近这么多局的记录
+
     private GridLayout gameGridLayout;
+    private BoardView gameBoardView;
+    private RecyclerView gameRecyclerView;
+    private GridLayoutManager largeBoardLayoutManager;
+    private LargeBoardAdapter largeBoardAdapter;
     private TextView tvGameTime;
     private TextView tvClickCount;
+    private TextView tvSeed;
+    private TextView tvFrameStats; // 帧耗时统计浮层，长按时间显示/隐藏
     private Button btnRestart;
     private Button btnSettings;
+    private Button btnRenderMode;
 
     private int columnCount = 3; // 默认列数
     private int rowCount = 2; // 默认行数
     private int totalCards = columnCount * rowCount;
+    private int renderMode = RENDER_MODE_VIEWS; // 玩家选择的渲染方式
+    private int activeRenderMode = RENDER_MODE_VIEWS; // 本局实际使用的渲染方式
+    private int cardWidth;
+    private int cardHeight;
 
-//    private List<CardView> cardViews; // 所有卡片视图
-    private List<Integer> cardImageIds; // 卡片正面图片资源ID列表
-    private List<Integer> selectedImageIds; // 每一轮游戏被选择的卡片
+    private final List<CardView> cardViews = new ArrayList<>(); // 卡片视图池，跨局复用
+    private int[] cardImageIds; // 卡片正面图片资源ID列表
+    private int[] facePool; // 本局可选的牌面，资源图片不够时补上程序生成的牌面
+    private CardImageCache imageCache; // 卡片图片缓存，所有卡片共享
+    private boolean useAtlas = true; // 图集模式：所有卡片图片打包成一张Bitmap
+    private final CardAnimationDriver animationDriver = new CardAnimationDriver(); // 所有卡片共用的动画时钟
+    private final GameScheduler scheduler = new GameScheduler(); // 延时回调，开新局时上一局的全部作废
 
-    private CardView firstFlippedCard = null;
-    private CardView secondFlippedCard = null;
+    private final BoardEngine engine = new BoardEngine(); // 棋盘逻辑，界面只负责渲染它的事件
+    private final Random random = new Random(); // 生成棋盘用，每局开始时按种子重置
+    private final Random seedSource = new Random(); // 没有指定种子时，用它产生每局的种子
+    private long seed; // 本局的种子
+    private boolean fixedSeed = false; // 玩家指定了种子时，每局都用同一个种子
+    private long fixedSeedValue;
+    private ReplayLog.Writer replayWriter; // 本局的操作记录，为null时不记录
+    private ResultsStore resultsStore; // 历史成绩，进程内共用，读写都在resultsExecutor上
+    private final ExecutorService resultsExecutor = Executors.newSingleThreadExecutor();
+    private boolean isAnimating = false;    // 是否正在动画中，为true时不响应点击
+    private boolean fastPlay = true; // 快速模式：没配对的两张牌翻回时，可以继续翻下一张
+    private int pendingFlipBacks = 0; // 非快速模式下，还没翻回背面的牌数
+    private boolean endlessMode = false; // 无尽模式：配对的两格原地补上新的一对，一局不结束
 
-    private int matchedPairsCount = 0;
-    private int clickCounter = 0;
-    private boolean isAnimating = false;    // 是否正在动画中
-
-    private Handler timerHandler = new Handler();
-    private long startTime = 0L;
-    private long gameStartTime;
-    private Runnable updateTimerRunnable = new Runnable() {
-        @Override
-        public void run() {
-            long elapsedMillis = SystemClock.uptimeMillis() - startTime;
-            int seconds = (int) (elapsedMillis / 1000);
-            int minutes = seconds / 60;
-            seconds = seconds % 60;
-            tvGameTime.setText(String.format("时间: %02d:%02d", minutes, seconds));
-            timerHandler.postDelayed(this, 1000); // 每秒更新一次
-        }
-    };
+    // HUD文字在复用的char数组里拼接，计时和点击都不创建新的String
+    private final HudText timeText = new HudText("时间: ");
+    private final HudText clickText = new HudText("点击次数: ");
+    private final GameClock gameClock = new GameClock(seconds -> timeText.setTime(tvGameTime, seconds));
+    private final FrameStatsMonitor frameStats = new FrameStatsMonitor(); // 动画帧耗时统计
+    private final StartupStats startupStats = new StartupStats(); // 首帧和棋盘可点击的耗时
+    private boolean boardReady = false; // 卡片都建好、可以点击了
+    private boolean resumed = false;
+    private ActivityManager activityManager;
+    private int baseMemoryTier = CardImageCache.TIER_FULL; // 内存充足时的档位，低内存设备最高只到RGB_565
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        startupStats.markCreate();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_flipcard);
 
         gameGridLayout = findViewById(R.id.game_grid_layout);
+        gameBoardView = findViewById(R.id.game_board_view);
+        gameRecyclerView = findViewById(R.id.game_recycler_view);
         tvGameTime = findViewById(R.id.tv_game_time);
         tvClickCount = findViewById(R.id.tv_click_count);
+        tvSeed = findViewById(R.id.tv_seed);
+        tvFrameStats = findViewById(R.id.tv_frame_stats);
         btnRestart = findViewById(R.id.btn_restart);
         btnSettings = findViewById(R.id.btn_settings);
+        btnRenderMode = findViewById(R.id.btn_render_mode);
 
         btnRestart.setOnClickListener(v -> startGame());
         btnSettings.setOnClickListener(v -> showSettingsDialog());
+        btnRenderMode.setOnClickListener(v -> switchRenderMode());
+        tvClickCount.setOnLongClickListener(v -> {
+            showStatsDialog();
+            return true;
+        });
+        tvGameTime.setOnLongClickListener(v -> {
+            toggleFrameStatsOverlay();
+            return true;
+        });
+        frameStats.setRefreshRate(getWindowManager().getDefaultDisplay().getRefreshRate());
 
+        imageCache = new CardImageCache(getResources());
+        activityManager = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+        if (activityManager != null && activityManager.isLowRamDevice()) {
+            baseMemoryTier = CardImageCache.TIER_RGB565;
+            imageCache.setMemoryTier(baseMemoryTier);
+        }
+        gameBoardView.setImageCache(imageCache);
+        gameBoardView.setOnBoardEventListener(this);
+        largeBoardLayoutManager = new GridLayoutManager(this, columnCount);
+        largeBoardAdapter = new LargeBoardAdapter(engine, imageCache, animationDriver, this,
+                this::onCardImageReady, this::onCardClicked, R.drawable.card_back);
+        gameRecyclerView.setLayoutManager(largeBoardLayoutManager);
+        gameRecyclerView.setAdapter(largeBoardAdapter);
+        gameRecyclerView.setHasFixedSize(true);
+        gameRecyclerView.setItemAnimator(null); // 翻牌动画由CardView自己负责
+        // 分屏、自由窗口、折叠屏展开时棋盘区域会变，卡片跟着原地调整，不重新开局
+        View.OnLayoutChangeListener boardSizeListener = (v, left, top, right, bottom,
+                                                          oldLeft, oldTop, oldRight, oldBottom) -> {
+            if (right - left != oldRight - oldLeft || bottom - top != oldBottom - oldTop) {
+                onBoardSizeChanged(v);
+            }
+        };
+        gameGridLayout.addOnLayoutChangeListener(boardSizeListener);
+        gameBoardView.addOnLayoutChangeListener(boardSizeListener);
+        gameRecyclerView.addOnLayoutChangeListener(boardSizeListener);
+        engine.setListener(this);
         initCardImageResources(); // 初始化卡片正面图片资源
-        startGame();
+        // 成绩记录在后台打开，记录很多时重建汇总也不影响启动。整个进程共用一个，旋转屏幕后已经打开过就直接用
+        resultsStore = ResultsStore.shared(new File(getFilesDir(), RESULTS_FILE));
+        resultsExecutor.execute(() -> {
+            try {
+                resultsStore.open();
+            } catch (IOException e) {
+                Loge("open results failed: " + e);
+            }
+        });
+
+        // 首帧只画HUD和空的棋盘区域，读存档、生成棋盘、建卡片都放到首帧画完之后。
+        // 旋转屏幕时从Bundle恢复，进程被杀后冷启动时从文件恢复，都没有时开新局
+        final byte[] savedSnapshot = savedInstanceState != null ? savedInstanceState.getByteArray(KEY_SNAPSHOT) : null;
+        scheduler.postAfterNextFrame(() -> {
+            startupStats.markFirstFrame();
+            byte[] snapshot = savedSnapshot != null ? savedSnapshot : readSnapshotFile();
+            if (snapshot == null || !restoreGame(snapshot)) {
+                startGame();
+            }
+        });
     }
 
 
     // 初始化所有可能的卡片正面图片资源
     private void initCardImageResources() {
-        cardImageIds = Arrays.asList(
+        cardImageIds = new int[] {
                 R.drawable.card_front_ace1, R.drawable.card_front_ace2, R.drawable.card_front_21,R.drawable.card_front_22,
                 R.drawable.card_front_31,R.drawable.card_front_32,R.drawable.card_front_41, R.drawable.card_front_42,
                 R.drawable.card_front_51, R.drawable.card_front_52,R.drawable.card_front_61,R.drawable.card_front_62,
                 R.drawable.card_front_jack1, R.drawable.card_front_jack2,
                 R.drawable.card_front_queen1,R.drawable.card_front_queen2,
                 R.drawable.card_front_king1,R.drawable.card_front_king2
-        );
+        };
+
+        // 图集包含所有正面和背面
+        int[] atlasIds = new int[cardImageIds.length + 1];
+        System.arraycopy(cardImageIds, 0, atlasIds, 0, cardImageIds.length);
+        atlasIds[cardImageIds.length] = R.drawable.card_back;
+        imageCache.setAtlasEnabled(useAtlas, atlasIds);
     }
 
     private void startGame() {
-        timerHandler.removeCallbacks(updateTimerRunnable); // 停止之前的计时器
-        startTime = SystemClock.uptimeMillis();
-        timerHandler.post(updateTimerRunnable); // 启动新计时器
+        GameLog.beginSection("startGame");
+        long startNanos = System.nanoTime();
+        try {
+            if (engine.isEndless()) {
+                finishReplayLog(); // 无尽模式不会自己结束，换局时写结束标记，记录才能回放校验
+            }
+            exportFrameStats(); // 上一局没玩完（无尽模式或中途换局）时，帧统计在这里导出
+            scheduler.newEpoch(); // 上一局还没执行的回调全部作废
+            // 计时器等棋盘可以点击时才从0开始
+            gameClock.stop();
+            timeText.setTime(tvGameTime, 0);
+            frameStats.reset(columnCount, rowCount);
+
+            clickText.setNumber(tvClickCount, 0);
+            isAnimating = false;
+            pendingFlipBacks = 0;
+
+            activeRenderMode = totalCards > MAX_GRID_CARDS ? RENDER_MODE_RECYCLER : renderMode;
+            updateBoardVisibility();
+            boardReady = false;
+            startupStats.beginBoard(columnCount, rowCount, activeRenderMode);
+
+            initGridLayout();
+            initCardList();
+            initCardsView(() -> {
+                startClock(0);
+                startReplayLog();
+                onBoardReady();
+            });
+        } finally {
+            GameLog.endSection();
+        }
+        Logd("startGame us=", (System.nanoTime() - startNanos) / 1000);
+    }
+
+    // 存档格式：[int 版本号][long 种子][long 已用时间ms][byte 渲染方式][BoardEngine存档]。
+    // 版本号用应用的versionCode，升级后资源ID可能变化，旧存档直接丢弃
+    private byte[] saveGame() {
+        ByteBuffer buffer = ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE + engine.getSnapshotSize());
+        buffer.putInt(BuildConfig.VERSION_CODE);
+        buffer.putLong(seed);
+        buffer.putLong(gameClock.getElapsedMillis());
+        buffer.put((byte) renderMode);
+        engine.writeSnapshot(buffer);
+        return buffer.array();
+    }
+
+    // 按存档直接还原棋盘，不重新洗牌，卡片按各自的状态显示，不播动画
+    private boolean restoreGame(byte[] snapshot) {
+        GameLog.beginSection("restoreGame");
+        long startNanos = System.nanoTime();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+            if (snapshot.length < SNAPSHOT_HEADER_SIZE || buffer.getInt() != BuildConfig.VERSION_CODE) {
+                return false;
+            }
+            scheduler.newEpoch();
+            long savedSeed = buffer.getLong();
+            long elapsedMillis = buffer.getLong();
+            int savedRenderMode = buffer.get();
+            if (!engine.readSnapshot(buffer)) {
+                return false;
+            }
+            // 先按存档里的棋盘算图片池，对不上时返回，Activity的字段还没改，调用方直接开新局
+            if (!engine.attachFacePool(buildFacePool(facePoolSize(engine.getTotalCards(), engine.isEndless())), random)) {
+                return false;
+            }
+            // 恢复的一局没有开头的操作记录，不再记录
+            closeReplayLog();
+            seed = savedSeed;
+            tvSeed.setText("种子: " + seed);
+            columnCount = engine.getColumnCount();
+            rowCount = engine.getRowCount();
+            totalCards = engine.getTotalCards();
+            endlessMode = engine.isEndless();
+            renderMode = savedRenderMode == RENDER_MODE_CANVAS ? RENDER_MODE_CANVAS : RENDER_MODE_VIEWS;
+            btnRenderMode.setText(renderMode == RENDER_MODE_CANVAS ? "渲染: 单视图" : "渲染: 多视图");
+
+            gameClock.stop();
+            timeText.setTime(tvGameTime, (int) (elapsedMillis / 1000));
+            frameStats.reset(columnCount, rowCount);
+            clickText.setNumber(tvClickCount, engine.getClickCount());
+            isAnimating = false;
+            pendingFlipBacks = 0;
+
+            activeRenderMode = totalCards > MAX_GRID_CARDS ? RENDER_MODE_RECYCLER : renderMode;
+            updateBoardVisibility();
+            boardReady = false;
+            startupStats.beginBoard(columnCount, rowCount, activeRenderMode);
+
+            initGridLayout();
+            preloadFaces();
+            initCardsView(() -> {
+                showEngineState();
+                refillVanishedPairs(); // 存档时还在播消失动画的无尽模式配对，直接补牌
+                if (engine.hasPendingPair()) {
+                    // 存档时两张牌已经翻开还没判定，棋盘布局完成后接着判定
+                    scheduler.post(this::verifyMatch);
+                }
+                if (!engine.isGameOver()) {
+                    startClock(elapsedMillis);
+                }
+                onBoardReady();
+            });
+        } finally {
+            GameLog.endSection();
+        }
+        Logd("restoreGame us=", (System.nanoTime() - startNanos) / 1000);
+        return true;
+    }
 
-        matchedPairsCount = 0;
-        clickCounter = 0;
-        tvClickCount.setText("点击次数: 0");
+    // 恢复存档后按engine的状态显示卡片。大棋盘由LargeBoardAdapter在绑定时按状态显示
+    private void showEngineState() {
+        for (int i = 0; i < totalCards; i++) {
+            byte state = engine.getState(i);
+            if (state == BoardEngine.STATE_HIDDEN) {
+                continue;
+            }
+            if (activeRenderMode == RENDER_MODE_CANVAS) {
+                gameBoardView.showState(i, true, state == BoardEngine.STATE_MATCHED);
+            } else if (activeRenderMode == RENDER_MODE_VIEWS) {
+                cardViews.get(i).showState(true, state == BoardEngine.STATE_MATCHED);
+            }
+        }
+    }
 
-        gameStartTime = SystemClock.elapsedRealtime();
+    private byte[] readSnapshotFile() {
+        File file = new File(getFilesDir(), SNAPSHOT_FILE);
+        if (!file.exists()) {
+            return null;
+        }
+        byte[] data = new byte[(int) file.length()];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) {
+                    return null;
+                }
+                read += n;
+            }
+            return data;
+        } catch (IOException e) {
+            Loge("read snapshot failed: " + e);
+            return null;
+        }
+    }
 
-        initGridLayout();
-        initCardList();
-        initCardsView();
+    // 存档只有几KB，直接在主线程写入
+    private void writeSnapshotFile() {
+        File file = new File(getFilesDir(), SNAPSHOT_FILE);
+        if (engine.getTotalCards() == 0) {
+            return; // 棋盘还没生成就退到了后台，保留上次的存档
+        }
+        if (engine.isGameOver()) {
+            file.delete(); // 已经结束的局不需要恢复
+            return;
+        }
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(saveGame());
+        } catch (IOException e) {
+            Loge("write snapshot failed: " + e);
+        }
+    }
+
+    private void updateBoardVisibility() {
+        gameGridLayout.setVisibility(activeRenderMode == RENDER_MODE_VIEWS ? View.VISIBLE : View.GONE);
+        gameBoardView.setVisibility(activeRenderMode == RENDER_MODE_CANVAS ? View.VISIBLE : View.GONE);
+        gameRecyclerView.setVisibility(activeRenderMode == RENDER_MODE_RECYCLER ? View.VISIBLE : View.GONE);
     }
 
     private void initGridLayout() {
-        gameGridLayout.removeAllViews(); // 清除之前的卡片
-        gameGridLayout.setColumnCount(columnCount);
-        gameGridLayout.setRowCount(rowCount);
+        if (activeRenderMode == RENDER_MODE_RECYCLER) {
+            measureCardSize();
+            Logd("large board: cardWidth=", cardWidth, ", cardHeight=", cardHeight);
+            imageCache.setTargetSize(cardWidth, cardHeight);
+            return;
+        }
+        // 只移除多出来的卡片，剩下的在initCardsView()里复用
+        while (cardViews.size() > totalCards) {
+            CardView card = cardViews.remove(cardViews.size() - 1);
+            card.cancelAnimation(); // 移除的卡片不能还留在动画时钟里占着硬件层
+            gameGridLayout.removeView(card);
+        }
+        if (gameGridLayout.getColumnCount() != columnCount) {
+            gameGridLayout.setColumnCount(columnCount);
+        }
+        if (gameGridLayout.getRowCount() != rowCount) {
+            gameGridLayout.setRowCount(rowCount);
+        }
+
+        // 卡片尺寸要在预解码之前确定，图片按这个尺寸降采样
+        measureCardSize();
+        Logd("cardWidth=", cardWidth, ", cardHeight=", cardHeight);
+        imageCache.setTargetSize(cardWidth, cardHeight);
     }
-    private void initCardList() {
-        selectedImageIds = new ArrayList<>();
-        // 随机选择所需的图片ID
-        Collections.shuffle(cardImageIds);
-        for (int i = 0; i < totalCards / 2; i++) {
-            selectedImageIds.add(cardImageIds.get(i));
-            selectedImageIds.add(cardImageIds.get(i)); // 每张图片添加两次，形成一对
+
+    // 按棋盘控件实际的尺寸算卡片大小，返回大小是否变了。
+    // 第一次布局之前控件还没有尺寸，先按屏幕估算，布局完成后onBoardSizeChanged会再校正
+    private boolean measureCardSize() {
+        View board = activeRenderMode == RENDER_MODE_RECYCLER ? gameRecyclerView
+                : activeRenderMode == RENDER_MODE_CANVAS ? gameBoardView : gameGridLayout;
+        int width = board.getWidth() - board.getPaddingLeft() - board.getPaddingRight();
+        int height = board.getHeight() - board.getPaddingTop() - board.getPaddingBottom();
+        if (width <= 0 || height <= 0) {
+            width = getResources().getDisplayMetrics().widthPixels;
+            height = getResources().getDisplayMetrics().heightPixels / 2;
         }
-        Collections.shuffle(selectedImageIds); // 打乱所有卡片的位置
+        int newWidth;
+        int newHeight;
+        if (activeRenderMode == RENDER_MODE_RECYCLER) {
+            // 大棋盘可以上下滚动，卡片宽度按列数算，高度按宽度的比例算
+            newWidth = (int) (width / columnCount * 0.9);
+            newHeight = newWidth * 4 / 3;
+        } else if (activeRenderMode == RENDER_MODE_CANVAS) {
+            newWidth = width / columnCount;
+            newHeight = height / rowCount;
+        } else {
+            // GridLayout按权重把格子撑满，这里算出来的只用于图片降采样
+            newWidth = width / columnCount - 2 * CARD_MARGIN_H;
+            newHeight = height / rowCount - 2 * CARD_MARGIN_V;
+        }
+        newWidth = Math.max(newWidth, 1);
+        newHeight = Math.max(newHeight, 1);
+        boolean changed = newWidth != cardWidth || newHeight != cardHeight;
+        cardWidth = newWidth;
+        cardHeight = newHeight;
+        return changed;
+    }
 
-//        for (int i = 0; i < totalCards; i++) {
-//            Logd("selectedImageIds=" + selectedImageIds.get(i));
-//        }
+    // 棋盘区域尺寸变了：GridLayout和BoardView在同一次布局里已经按新尺寸排好，
+    // 这里只需要让图片缓存换成新尺寸，在后台解码，解码完成前卡片继续显示旧图。
+    // 大棋盘的列表项尺寸是固定的，原地改可见卡片的LayoutParams，以后绑定的用新尺寸
+    private void onBoardSizeChanged(View board) {
+        if (board.getVisibility() != View.VISIBLE || totalCards == 0 || !measureCardSize()) {
+            return;
+        }
+        Logd("board resized: cardWidth=", cardWidth, ", cardHeight=", cardHeight);
+        imageCache.setTargetSize(cardWidth, cardHeight);
+        if (activeRenderMode == RENDER_MODE_RECYCLER) {
+            largeBoardAdapter.setCardSize(cardWidth, cardHeight);
+            for (int i = 0; i < gameRecyclerView.getChildCount(); i++) {
+                View card = gameRecyclerView.getChildAt(i);
+                ViewGroup.LayoutParams layoutParams = card.getLayoutParams();
+                layoutParams.width = cardWidth;
+                layoutParams.height = cardHeight;
+                card.setLayoutParams(layoutParams);
+            }
+        }
+        reloadBoardImages();
     }
 
-    private void initCardsView() {
-        int cardWidth = (int) (getResources().getDisplayMetrics().widthPixels / columnCount * 0.9);
-        int cardHeight = (int) (getResources().getDisplayMetrics().heightPixels / (rowCount + 1) * 0.8);
-        Logd("Width="+getResources().getDisplayMetrics().widthPixels+", Height="+getResources().getDisplayMetrics().heightPixels );
-        Logd("cardWidth="+cardWidth+", cardHeight="+cardHeight);
+    // 缓存换了尺寸或档位后，按新的重新解码棋盘上还会显示的图片，解码完成前卡片继续显示旧图
+    private void reloadBoardImages() {
+        if (activeRenderMode == RENDER_MODE_RECYCLER) {
+            for (int i = 0; i < gameRecyclerView.getChildCount(); i++) {
+                CardView card = (CardView) gameRecyclerView.getChildAt(i);
+                if (card.getVisibility() == View.VISIBLE) {
+                    imageCache.preloadOne(card.getCardId(), this::onCardImageReady);
+                }
+            }
+        } else {
+            preloadFaces();
+        }
+        imageCache.preloadOne(R.drawable.card_back, this::onCardImageReady);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        releaseMatchedFaces();
+        // 前台也收到告警说明真的紧张了，按严重程度降档；后台时先降档，回到前台内存够了再升回来
+        if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            lowerMemoryTier(CardImageCache.TIER_HALF);
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW) {
+            lowerMemoryTier(CardImageCache.TIER_RGB565);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        releaseMatchedFaces();
+        lowerMemoryTier(CardImageCache.TIER_HALF);
+    }
 
-        // 创建CardView实例并设置图片ID
+    // 已经配对消失的牌面不会再显示：卡片放掉对图片的引用，缓存里也清掉。
+    // 消失动画还在播的卡片手里的图不动，缓存清掉不影响它继续画完。
+    // 图集模式下资源牌面都在同一张图集里，清掉单张什么也省不下，这里只放掉单独生成的牌面，
+    // 图集占的内存要靠onTrimMemory里降档（按新档位重建更小的图集）才能收回
+    private void releaseMatchedFaces() {
+        if (totalCards == 0) {
+            return;
+        }
+        int beforeBytes = imageCache.getSizeBytes();
+        int skipped = 0;
+        if (activeRenderMode == RENDER_MODE_CANVAS) {
+            gameBoardView.releaseVanishedFaces();
+        } else if (activeRenderMode == RENDER_MODE_RECYCLER) {
+            for (int i = 0; i < gameRecyclerView.getChildCount(); i++) {
+                ((CardView) gameRecyclerView.getChildAt(i)).releaseImages();
+            }
+        } else {
+            for (int i = 0; i < cardViews.size(); i++) {
+                cardViews.get(i).releaseImages();
+            }
+        }
         for (int i = 0; i < totalCards; i++) {
-            CardView card = new CardView(this);
-            card.setCard(selectedImageIds.get(i), selectedImageIds.get(i), R.drawable.card_back);
-
-            GridLayout.LayoutParams layoutParams = new GridLayout.LayoutParams();
-            layoutParams.width = cardWidth;
-            layoutParams.height = cardHeight;
-            layoutParams.setMargins(8, 4, 8, 4);
-            card.setLayoutParams(layoutParams);
-            gameGridLayout.addView(card);
-
-            card.setOnClickListener(v -> {
-                Logd("card clicked, id=" + card.getCardId());
-                if (isAnimating || card.isFront()) {
-                    return; // 正在动画或已翻开的卡片不响应点击。已配对会变成disable状态，不会有点击事件
+            if (engine.getState(i) != BoardEngine.STATE_MATCHED) {
+                continue;
+            }
+            if (imageCache.isInAtlas(engine.getFace(i))) {
+                skipped++;
+            } else {
+                imageCache.evict(engine.getFace(i));
+            }
+        }
+        Logd("releaseMatchedFaces: bytes ", beforeBytes, " -> ", imageCache.getSizeBytes());
+        if (skipped > 0) {
+            Logd("releaseMatchedFaces: faces kept in atlas ", skipped);
+        }
+    }
+
+    // 只降不升，已经在更低的档位时什么也不做
+    private void lowerMemoryTier(int tier) {
+        if (tier > imageCache.getMemoryTier()) {
+            applyMemoryTier(tier);
+        }
+    }
+
+    // 系统没有"内存恢复"的回调，回到前台时检查一次，内存宽裕就升一档
+    private void raiseMemoryTierIfRecovered() {
+        int tier = imageCache.getMemoryTier();
+        if (tier <= baseMemoryTier || activityManager == null) {
+            return;
+        }
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        activityManager.getMemoryInfo(memoryInfo);
+        if (!memoryInfo.lowMemory && memoryInfo.availMem > memoryInfo.threshold * 2) {
+            applyMemoryTier(tier - 1);
+        }
+    }
+
+    private void applyMemoryTier(int tier) {
+        if (!imageCache.setMemoryTier(tier)) {
+            return;
+        }
+        Logd("memory tier=", tier);
+        if (totalCards > 0) {
+            reloadBoardImages();
+        }
+        updateFrameStatsOverlay();
+    }
+    private void initCardList() {
+        GameLog.beginSection("initCardList");
+        try {
+            // 随机选择所需的图片ID，每张两次并打乱，由engine完成。
+            // 同样的种子和棋盘大小总是生成同样的棋盘
+            seed = fixedSeed ? fixedSeedValue : seedSource.nextLong();
+            random.setSeed(seed);
+            tvSeed.setText("种子: " + seed);
+            engine.newGame(columnCount, rowCount, buildFacePool(facePoolSize()), random, endlessMode);
+            preloadFaces();
+        } finally {
+            GameLog.endSection();
+        }
+    }
+
+    // 新的一局开始记录操作，上一局没打完的记录直接关闭。
+    // 写入经过缓冲区，每回合判定时落盘一次，崩溃时最多丢掉最后一回合
+    private void startReplayLog() {
+        closeReplayLog();
+        final File dir = new File(getFilesDir(), REPLAY_DIR);
+        if (!dir.exists() && !dir.mkdirs()) {
+            return;
+        }
+        resultsExecutor.execute(() -> pruneReplayLogs(dir));
+        File file = new File(dir, "game_" + System.currentTimeMillis() + ".mtr");
+        try {
+            replayWriter = new ReplayLog.Writer(new BufferedOutputStream(new FileOutputStream(file)),
+                    seed, columnCount, rowCount, buildFacePool(facePoolSize()), endlessMode, SystemClock.uptimeMillis());
+        } catch (IOException e) {
+            Loge("open replay log failed: " + e);
+            replayWriter = null;
+        }
+    }
+
+    // 只保留最新的MAX_REPLAY_FILES个记录，文件名里是开局时间，按名字排序就是按时间排序
+    private void pruneReplayLogs(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith("game_") && name.endsWith(".mtr"));
+        if (files == null || files.length <= MAX_REPLAY_FILES) {
+            return;
+        }
+        Arrays.sort(files);
+        for (int i = 0; i < files.length - MAX_REPLAY_FILES; i++) {
+            if (!files[i].delete()) {
+                Loge("delete replay log failed: " + files[i]);
+            }
+        }
+    }
+
+    private void recordClick(int index) {
+        if (replayWriter == null) {
+            return;
+        }
+        try {
+            replayWriter.click(index, SystemClock.uptimeMillis());
+        } catch (IOException e) {
+            Loge("write replay log failed: " + e);
+            closeReplayLog();
+        }
+    }
+
+    private void recordRefill(int index) {
+        if (replayWriter == null) {
+            return;
+        }
+        try {
+            replayWriter.refill(index);
+        } catch (IOException e) {
+            Loge("write replay log failed: " + e);
+            closeReplayLog();
+        }
+    }
+
+    private void recordResolve() {
+        if (replayWriter == null) {
+            return;
+        }
+        try {
+            replayWriter.resolve();
+            replayWriter.flush(); // 每回合落盘一次，只有几个字节
+        } catch (IOException e) {
+            Loge("write replay log failed: " + e);
+            closeReplayLog();
+        }
+    }
+
+    private void finishReplayLog() {
+        if (replayWriter == null) {
+            return;
+        }
+        try {
+            replayWriter.finish(engine.getMatchedPairsCount(), engine.getClickCount());
+        } catch (IOException e) {
+            Loge("finish replay log failed: " + e);
+        }
+        closeReplayLog();
+    }
+
+    private void closeReplayLog() {
+        if (replayWriter == null) {
+            return;
+        }
+        try {
+            replayWriter.close();
+        } catch (IOException e) {
+            // 关闭失败只影响这一局的记录
+        }
+        replayWriter = null;
+    }
+
+    private void preloadFaces() {
+        // 大棋盘只为屏幕内的格子准备图片，由LargeBoardAdapter在绑定时发起
+        if (activeRenderMode != RENDER_MODE_RECYCLER) {
+            // 棋盘显示背面的同时，在后台解码本局用到的正面图片。解码完成时已经开了新局的话不再通知。
+            // 已经配对消失的牌面不会再显示，恢复存档或者换尺寸、换档位重新解码时跳过
+            final int epoch = scheduler.getEpoch();
+            CardImageCache.OnImageReadyListener listener = resId -> {
+                if (scheduler.isCurrent(epoch)) {
+                    onCardImageReady(resId);
                 }
-                isAnimating = true;
-
-                clickCounter++;
-                tvClickCount.setText("点击次数: " + clickCounter);
-
-                card.flipCard(); // 翻开卡片
-
-                if (firstFlippedCard == null) {
-                    firstFlippedCard = card;
-                    card.postDelayed(() -> {
-                        isAnimating = false;
-                    }, 1000);  // 此处是为了等待翻牌动画结束
-                } else {
-                    secondFlippedCard = card;
-                    Logd("wait animation...");
-                    card.postDelayed(() -> {
-                        Logd("animation end...");
-                        verifyMatch();
-                    }, 800);  // 此处是为了等待翻牌动画结束
+            };
+            for (int i = 0; i < totalCards; i++) {
+                if (engine.getState(i) != BoardEngine.STATE_MATCHED) {
+                    imageCache.preloadOne(engine.getFace(i), listener);
                 }
-            });
+            }
+        }
+    }
+
+    // 本局图片池的大小：普通模式每对一种图片；无尽模式多备一倍，补牌时从没在棋盘上的图片里抽
+    private int facePoolSize() {
+        return facePoolSize(totalCards, endlessMode);
+    }
+
+    private int facePoolSize(int total, boolean endless) {
+        return endless ? Math.max(total, cardImageIds.length) : total / 2;
+    }
+
+    // 资源图片够用时直接用，不够时用程序生成的牌面补足
+    private int[] buildFacePool(int count) {
+        if (count <= cardImageIds.length) {
+            return cardImageIds;
+        }
+        if (facePool == null || facePool.length != count) {
+            facePool = new int[count];
+            System.arraycopy(cardImageIds, 0, facePool, 0, cardImageIds.length);
+            for (int i = cardImageIds.length; i < count; i++) {
+                facePool[i] = GeneratedFaceFactory.faceId(i - cardImageIds.length);
+            }
+        }
+        return facePool;
+    }
+
+    // 建好卡片后调用onReady，卡片要分几帧建时onReady在最后一帧执行
+    private void initCardsView(Runnable onReady) {
+        GameLog.beginSection("initCardsView");
+        try {
+            bindCardsView(onReady);
+        } finally {
+            GameLog.endSection();
+        }
+    }
+
+    // 棋盘可以点击了：开始接受点击，记录启动耗时
+    private void onBoardReady() {
+        boardReady = true;
+        gameGridLayout.setAlpha(1f);
+        startupStats.markInteractive(new File(getFilesDir(), STARTUP_STATS_FILE), resultsExecutor);
+        if (GameLog.DEBUG) {
+            Logd("board ready: " + startupStats.summary());
+        }
+        updateFrameStatsOverlay();
+    }
+
+    // 从已用时间elapsedMillis开始计时。页面已经不可见时（比如建卡片期间切到了后台）先暂停，onResume再接着走
+    private void startClock(long elapsedMillis) {
+        gameClock.start(elapsedMillis);
+        if (!resumed) {
+            gameClock.pause();
+        }
+    }
+
+    private void bindCardsView(Runnable onReady) {
+        if (activeRenderMode == RENDER_MODE_CANVAS) {
+            gameBoardView.setBoard(columnCount, rowCount, engine.getFaces(), R.drawable.card_back);
+            onReady.run();
+            return;
+        }
+        if (activeRenderMode == RENDER_MODE_RECYCLER) {
+            largeBoardLayoutManager.setSpanCount(columnCount);
+            largeBoardAdapter.setCardSize(cardWidth, cardHeight);
+            largeBoardAdapter.notifyDataSetChanged();
+            gameRecyclerView.scrollToPosition(0);
+            onReady.run();
+            return;
+        }
+        bindCardsFrom(0, onReady);
+    }
+
+    // 从第start张开始绑定。复用已有的CardView很快，一次绑完；只补齐不足的部分，
+    // 新建时每帧最多建CARDS_PER_FRAME张，剩下的下一帧接着建。建完之前棋盘透明，
+    // 避免GridLayout按已有的行列分配尺寸、卡片每帧跟着变大变小
+    private void bindCardsFrom(int start, Runnable onReady) {
+        int created = 0;
+        for (int i = start; i < totalCards; i++) {
+            CardView card;
+            if (i < cardViews.size()) {
+                card = cardViews.get(i);
+                // 列数变了时格子的行列位置会变，尺寸由GridLayout按权重分配
+                GridLayout.LayoutParams layoutParams = (GridLayout.LayoutParams) card.getLayoutParams();
+                GridLayout.Spec rowSpec = GridLayout.spec(i / columnCount, 1f);
+                GridLayout.Spec columnSpec = GridLayout.spec(i % columnCount, 1f);
+                if (!rowSpec.equals(layoutParams.rowSpec) || !columnSpec.equals(layoutParams.columnSpec)) {
+                    layoutParams.rowSpec = rowSpec;
+                    layoutParams.columnSpec = columnSpec;
+                    card.setLayoutParams(layoutParams);
+                }
+            } else {
+                if (created == CARDS_PER_FRAME) {
+                    final int next = i;
+                    gameGridLayout.setAlpha(0f);
+                    scheduler.postNextFrame(() -> bindCardsFrom(next, onReady));
+                    return;
+                }
+                card = createCardView(i);
+                cardViews.add(card);
+                gameGridLayout.addView(card);
+                created++;
+            }
+            int face = engine.getFace(i);
+            card.setCard(face, face, R.drawable.card_back);
+        }
+        if (GameLog.DEBUG) {
+            Logd("imageCache: hit=" + imageCache.getHitCount() + ", miss=" + imageCache.getMissCount()
+                    + ", decode=" + imageCache.getDecodeCount() + ", bytes=" + imageCache.getSizeBytes());
+        }
+        onReady.run();
+    }
+
+    // 后台解码完成一张图片，通知用到它的卡片
+    private void onCardImageReady(int resId) {
+        if (activeRenderMode == RENDER_MODE_CANVAS) {
+            gameBoardView.onImageReady(resId);
+            return;
+        }
+        if (activeRenderMode == RENDER_MODE_RECYCLER) {
+            for (int i = 0; i < gameRecyclerView.getChildCount(); i++) {
+                ((CardView) gameRecyclerView.getChildAt(i)).onImageReady(resId);
+            }
+            return;
+        }
+        for (int i = 0; i < cardViews.size(); i++) {
+            cardViews.get(i).onImageReady(resId);
+        }
+    }
+
+    // 在两种渲染方式之间切换，切换后重新开始一局
+    private void switchRenderMode() {
+        renderMode = renderMode == RENDER_MODE_VIEWS ? RENDER_MODE_CANVAS : RENDER_MODE_VIEWS;
+        btnRenderMode.setText(renderMode == RENDER_MODE_CANVAS ? "渲染: 单视图" : "渲染: 多视图");
+        Logd("renderMode=", renderMode);
+        startGame();
+    }
+
+    // 格子对应的CardView。大棋盘模式下格子可能不在屏幕内，这时返回null，
+    // 滑回屏幕时LargeBoardAdapter会按engine的状态重新绑定
+    private CardView findCardView(int index) {
+        if (activeRenderMode == RENDER_MODE_RECYCLER) {
+            RecyclerView.ViewHolder holder = gameRecyclerView.findViewHolderForAdapterPosition(index);
+            return holder != null ? ((LargeBoardAdapter.CardHolder) holder).card : null;
+        }
+        return cardViews.get(index);
+    }
+
+    // 以下几个方法把棋盘事件转给当前的渲染方式
+    private void flipCardAt(int index) {
+        if (activeRenderMode == RENDER_MODE_CANVAS) {
+            gameBoardView.flipCard(index);
+        } else {
+            CardView card = findCardView(index);
+            if (card != null) {
+                card.flipCard();
+            }
+        }
+        onAnimationStarted(index, FrameStatsMonitor.TYPE_FLIP);
+    }
+
+    private void flipBackAt(int index) {
+        if (activeRenderMode == RENDER_MODE_CANVAS) {
+            gameBoardView.flipBack(index);
+        } else {
+            CardView card = findCardView(index);
+            if (card != null) {
+                card.flipBack();
+            }
+        }
+        onAnimationStarted(index, FrameStatsMonitor.TYPE_FLIP_BACK);
+    }
+
+    private void vanishCardAt(int index) {
+        if (activeRenderMode == RENDER_MODE_CANVAS) {
+            gameBoardView.vanishCard(index);
+        } else {
+            CardView card = findCardView(index);
+            if (card != null) {
+                card.vanishCard();
+            }
+        }
+        onAnimationStarted(index, FrameStatsMonitor.TYPE_VANISH);
+    }
+
+    // 动画确实开始了才计入帧统计（大棋盘上屏幕外的格子不播动画）
+    private void onAnimationStarted(int index, int type) {
+        if (isCardAnimating(index)) {
+            frameStats.animationStarted(type);
+        }
+    }
+
+    private void onAnimationEnded(int type) {
+        frameStats.animationEnded(type);
+        updateFrameStatsOverlay();
+    }
+
+    private void toggleFrameStatsOverlay() {
+        boolean show = tvFrameStats.getVisibility() != View.VISIBLE;
+        tvFrameStats.setVisibility(show ? View.VISIBLE : View.GONE);
+        updateFrameStatsOverlay();
+    }
+
+    // 浮层上同时显示内存档位和常驻的图片字节数
+    private void updateFrameStatsOverlay() {
+        if (tvFrameStats.getVisibility() == View.VISIBLE) {
+            tvFrameStats.setText(frameStats.summary() + String.format(Locale.US, "\nmemory: tier=%d bitmaps=%dKB",
+                    imageCache.getMemoryTier(), imageCache.getSizeBytes() / 1024) + "\n" + startupStats.summary());
         }
     }
 
+    private boolean isCardAnimating(int index) {
+        if (activeRenderMode == RENDER_MODE_CANVAS) {
+            return gameBoardView.isAnimating(index);
+        }
+        CardView card = findCardView(index);
+        return card != null && card.isAnimating();
+    }
+
+    // 新建一张卡片，点击事件只在创建时设置一次，复用时不再重复设置。
+    // 卡片在池中的位置固定，index就是它在棋盘上的格子。
+    // 宽高为0，行列权重都是1，由GridLayout按自己的实际尺寸平分，窗口尺寸变化时在同一次布局里跟着变
+    private CardView createCardView(int index) {
+        CardView card = new CardView(this);
+        card.setImageCache(imageCache);
+        card.setOnCardAnimationListener(this);
+        card.setAnimationDriver(animationDriver);
+
+        GridLayout.LayoutParams layoutParams = new GridLayout.LayoutParams(
+                GridLayout.spec(index / columnCount, 1f), GridLayout.spec(index % columnCount, 1f));
+        layoutParams.width = 0;
+        layoutParams.height = 0;
+        layoutParams.setGravity(Gravity.FILL);
+        layoutParams.setMargins(CARD_MARGIN_H, CARD_MARGIN_V, CARD_MARGIN_H, CARD_MARGIN_V);
+        card.setLayoutParams(layoutParams);
+
+        card.setOnClickListener(v -> onCardClicked(index));
+        return card;
+    }
+
+    private void onCardClicked(int index) {
+        Logd("card clicked, index=", index);
+        if (!boardReady || isAnimating || isCardAnimating(index)) {
+            return; // 正在动画不响应点击。快速模式下还在翻回的那张牌也不能点
+        }
+        int result = engine.select(index); // 翻开卡片，已翻开或已配对的卡片engine会忽略
+        if (result == BoardEngine.SELECT_IGNORED) {
+            return;
+        }
+        recordClick(index); // 只记录engine接受的点击，回放时逐条重放
+        clickText.setNumber(tvClickCount, engine.getClickCount());
+        // 第二张翻开后engine不再接受点击，等两张翻牌动画都结束后在onFlipEnd里判定
+    }
+
     private void verifyMatch() {
-        Logd("id1="+firstFlippedCard.getCardId()+", id2="+secondFlippedCard.getCardId());
-        if (firstFlippedCard.getCardId() == secondFlippedCard.getCardId()) { // 匹配成功
-            Logd(" ==matched==");
-            firstFlippedCard.vanishCard();
-            secondFlippedCard.vanishCard();
-            checkGameOver();
-        } else { // 匹配失败，等待一段时间后翻回
-            Logd(" ==no match,flip back==");
-            firstFlippedCard.flipBack();
-            secondFlippedCard.flipBack();
-        }
-        new Handler().postDelayed(() -> {
-            firstFlippedCard = null;
-            secondFlippedCard = null;
-            isAnimating = false;
-        }, 1000); // 延迟一会翻回
+        if (!engine.hasPendingPair()) {
+            return;
+        }
+        GameLog.beginSection("verifyMatch");
+        try {
+            recordResolve(); // 判定里可能马上补牌，判定记录要写在补牌前面
+            engine.resolve(); // 结果通过onPairMatched/onPairMismatched/onGameOver渲染
+        } finally {
+            GameLog.endSection();
+        }
     }
-    public void checkGameOver() {
-        matchedPairsCount++;
-        // 检查是否所有卡片都已配对
-        if (matchedPairsCount * 2 == totalCards) { // 游戏结束
-            timerHandler.removeCallbacks(updateTimerRunnable); // 停止计时器
-            Toast.makeText(this, "恭喜，所有卡片已配对！点击次数: " + clickCounter + ", 用时: " + tvGameTime.getText().toString().replace("时间: ", ""), Toast.LENGTH_LONG).show();
-            // 可以在这里显示游戏结束对话框
+
+    @Override
+    public void onCardRevealed(int index) {
+        flipCardAt(index);
+    }
+
+    @Override
+    public void onPairMatched(int first, int second) {
+        Logd("==matched== id1=", engine.getFace(first), ", id2=", engine.getFace(second));
+        vanishCardAt(first);
+        vanishCardAt(second);
+        refillVanishedPairs(); // 两张都没有消失动画时（大棋盘上不在屏幕内）马上补牌
+    }
+
+    // 无尽模式：配对的两格都消失后补牌。大棋盘上不在屏幕内的格子没有消失动画，不用等；
+    // 列表回收时提前结束的消失动画也从这里补上，所以每次都扫一遍整个棋盘，不依赖是哪张牌的回调
+    private void refillVanishedPairs() {
+        if (!engine.isEndless()) {
+            return;
         }
+        for (int i = 0; i < totalCards; i++) {
+            if (engine.getState(i) != BoardEngine.STATE_MATCHED || isCardAnimating(i)) {
+                continue;
+            }
+            int partner = engine.findPartner(i);
+            if (partner >= 0 && !isCardAnimating(partner)) {
+                recordRefill(i);
+                engine.refill(i);
+            }
+        }
+    }
 
-        long finalTime = SystemClock.elapsedRealtime() - gameStartTime;
-        Logd("Finishing game. Time: " + (finalTime / 1000));
+    @Override
+    public void onPairRefilled(int first, int second, int swapped) {
+        Logd("==refilled== index1=", first, ", index2=", second);
+        // 新牌面先开始解码，两张新牌都是背面朝上，翻开前一般已经解码好了
+        imageCache.preloadOne(engine.getFace(first), this::onCardImageReady);
+        appearCardAt(first);
+        appearCardAt(second);
+        if (swapped >= 0) {
+            replaceFaceAt(swapped);
+        }
+    }
+
+    // 补牌只重新绑定这一格，不重建视图，也不触发重新布局
+    private void appearCardAt(int index) {
+        int face = engine.getFace(index);
+        if (activeRenderMode == RENDER_MODE_CANVAS) {
+            gameBoardView.refillCell(index, face);
+        } else {
+            CardView card = findCardView(index);
+            if (card == null) {
+                largeBoardAdapter.notifyItemChanged(index); // 不在屏幕内，下次绑定时按engine的状态显示
+                return;
+            }
+            card.setCard(face, face, R.drawable.card_back);
+            card.appearCard();
+        }
+        onAnimationStarted(index, FrameStatsMonitor.TYPE_APPEAR);
+    }
+
+    // 背面朝上的牌换了牌面，看起来没有变化，只换图片
+    private void replaceFaceAt(int index) {
+        int face = engine.getFace(index);
+        if (activeRenderMode == RENDER_MODE_CANVAS) {
+            gameBoardView.replaceFace(index, face);
+            return;
+        }
+        CardView card = findCardView(index);
+        if (card != null) {
+            card.setFrontImage(face, face);
+        } else {
+            largeBoardAdapter.notifyItemChanged(index);
+        }
+    }
+
+    @Override
+    public void onPairMismatched(int first, int second) {
+        Logd("==no match,flip back== id1=", engine.getFace(first), ", id2=", engine.getFace(second));
+        flipBackAt(first);
+        flipBackAt(second);
+        if (!fastPlay) {
+            // 等两张牌都翻回背面再接受点击。大棋盘上不在屏幕内的牌没有动画，不用等
+            pendingFlipBacks = (isCardAnimating(first) ? 1 : 0) + (isCardAnimating(second) ? 1 : 0);
+            isAnimating = pendingFlipBacks > 0;
+        }
+    }
+
+    @Override
+    public void onGameOver(int clickCount) {
+        gameClock.stop(); // 停止计时器
+        finishReplayLog();
+        Toast.makeText(this, "恭喜，所有卡片已配对！点击次数: " + clickCount + ", 用时: " + tvGameTime.getText().toString().replace("时间: ", ""), Toast.LENGTH_LONG).show();
+        // 可以在这里显示游戏结束对话框
+
+        long finalTime = gameClock.getElapsedMillis();
+        saveResult(clickCount, finalTime);
+        exportFrameStats();
+        Logd("Finishing game. Time: ", finalTime / 1000);
+    }
+
+    // 把还没导出的帧统计追加到CSV再清空，在resultsExecutor上写文件。没有新数据时不写
+    private void exportFrameStats() {
+        if (frameStats.hasSamples()) {
+            frameStats.export(new File(getFilesDir(), FRAME_STATS_FILE), resultsExecutor);
+            frameStats.clearSamples();
+        }
+    }
+
+    // 本局成绩追加到历史记录，在后台线程写入
+    private void saveResult(int clickCount, long timeMillis) {
+        final ResultsStore.Result result = new ResultsStore.Result();
+        result.columnCount = columnCount;
+        result.rowCount = rowCount;
+        result.clickCount = clickCount;
+        result.timeMillis = timeMillis;
+        result.seed = seed;
+        result.timestamp = System.currentTimeMillis();
+        resultsExecutor.execute(() -> {
+            try {
+                resultsStore.append(result);
+            } catch (IOException e) {
+                Loge("save result failed: " + e);
+            }
+        });
+    }
+
+    // 统计页面：每个级别的汇总加上当前级别最近几局，长按点击次数打开。
+    // 汇总在内存里，查询排在后台线程，不会和正在写入的成绩抢文件
+    private void showStatsDialog() {
+        final int columns = columnCount;
+        final int rows = rowCount;
+        resultsExecutor.execute(() -> {
+            StringBuilder sb = new StringBuilder();
+            for (ResultsStore.LevelSummary summary : resultsStore.getSummaries()) {
+                sb.append(String.format(Locale.US, "%dx%d: %d局, 最少%d次, 最快%.1f秒, 平均%.1f次\n",
+                        summary.columnCount, summary.rowCount, summary.gameCount, summary.fewestClicks,
+                        summary.bestTimeMillis / 1000f, summary.totalClicks / (float) summary.gameCount));
+            }
+            try {
+                List<ResultsStore.Result> recent = resultsStore.getRecent(columns, rows, RECENT_GAMES);
+                if (!recent.isEmpty()) {
+                    sb.append("\n").append(columns).append('x').append(rows).append(" 最近").append(recent.size()).append("局:\n");
+                    for (ResultsStore.Result result : recent) {
+                        sb.append(String.format(Locale.US, "%d次 %.1f秒\n", result.clickCount, result.timeMillis / 1000f));
+                    }
+                }
+            } catch (IOException e) {
+                Loge("read results failed: " + e);
+            }
+            final String text = sb.length() > 0 ? sb.toString() : "还没有成绩";
+            runOnUiThread(() -> {
+                if (!isFinishing()) {
+                    new AlertDialog.Builder(this).setTitle("成绩").setMessage(text).setPositiveButton("确定", null).show();
+                }
+            });
+        });
+    }
+
+    @Override
+    public void onFlipEnd(CardView card) {
+        onCardFlipEnd(card.isFront());
+    }
+
+    @Override
+    public void onCellFlipEnd(int index, boolean front) {
+        onCardFlipEnd(front);
+    }
+
+    @Override
+    public void onCellClicked(int index) {
+        onCardClicked(index);
+    }
+
+    @Override
+    public void onCellVanishEnd(int index) {
+        // 和onVanishEnd一样
+        onAnimationEnded(FrameStatsMonitor.TYPE_VANISH);
+        refillVanishedPairs();
+    }
+
+    @Override
+    public void onCellAppearEnd(int index) {
+        onAnimationEnded(FrameStatsMonitor.TYPE_APPEAR);
+    }
+
+    private void onCardFlipEnd(boolean front) {
+        onAnimationEnded(front ? FrameStatsMonitor.TYPE_FLIP : FrameStatsMonitor.TYPE_FLIP_BACK);
+        if (front) {
+            // 翻开动画结束，本回合的两张牌都翻开后才判定
+            if (engine.hasPendingPair()
+                    && !isCardAnimating(engine.getFirstIndex())
+                    && !isCardAnimating(engine.getSecondIndex())) {
+                Logd("animation end...");
+                verifyMatch();
+            }
+        } else if (pendingFlipBacks > 0) {
+            // 翻回动画结束
+            pendingFlipBacks--;
+            if (pendingFlipBacks == 0) {
+                isAnimating = false;
+            }
+        }
+    }
+
+    @Override
+    public void onVanishEnd(CardView card) {
+        // 配对的牌消失不影响后续操作，记录统计，无尽模式下两张都消失后补牌
+        onAnimationEnded(FrameStatsMonitor.TYPE_VANISH);
+        refillVanishedPairs();
+    }
+
+    @Override
+    public void onAppearEnd(CardView card) {
+        onAnimationEnded(FrameStatsMonitor.TYPE_APPEAR);
     }
 
     private void showSettingsDialog() {
@@ -212,6 +1182,22 @@ public class FlipCardGameActivity extends AppCompatActivity {
 
         final RadioGroup radioGroupLevel = dialogView.findViewById(R.id.radio_group_level);
         Button btnConfirm = dialogView.findViewById(R.id.btn_dialog_confirm);
+        // 大棋盘级别，卡片数超过图片资源，使用程序生成的牌面
+        final RadioButton rbLevelLarge = addLevelButton(radioGroupLevel, "超大 10x10");
+        final RadioButton rbLevelHuge = addLevelButton(radioGroupLevel, "训练 20x20");
+        // 种子输入框，放在难度选项下面。留空时每局随机
+        final EditText etSeed = new EditText(this);
+        etSeed.setInputType(InputType.TYPE_CLASS_NUMBER | InputType.TYPE_NUMBER_FLAG_SIGNED);
+        etSeed.setHint("种子（留空为随机）");
+        if (fixedSeed) {
+            etSeed.setText(String.valueOf(fixedSeedValue));
+        }
+        ViewGroup levelParent = (ViewGroup) radioGroupLevel.getParent();
+        levelParent.addView(etSeed, levelParent.indexOfChild(radioGroupLevel) + 1);
+        final CheckBox cbEndless = new CheckBox(this);
+        cbEndless.setText("无尽模式（配对后原地补牌）");
+        cbEndless.setChecked(endlessMode);
+        levelParent.addView(cbEndless, levelParent.indexOfChild(etSeed) + 1);
 
         // 根据当前难度级别设置RadioButton选中状态
         if (columnCount == 3 && rowCount == 2) {
@@ -222,6 +1208,10 @@ public class FlipCardGameActivity extends AppCompatActivity {
             radioGroupLevel.check(R.id.rb_level_hard);
         } else if (columnCount == 6 && rowCount == 5) {
             radioGroupLevel.check(R.id.rb_level_expert);
+        } else if (columnCount == 10 && rowCount == 10) {
+            radioGroupLevel.check(rbLevelLarge.getId());
+        } else if (columnCount == 20 && rowCount == 20) {
+            radioGroupLevel.check(rbLevelHuge.getId());
         }
 
         final AlertDialog dialog = builder.create();
@@ -240,42 +1230,126 @@ public class FlipCardGameActivity extends AppCompatActivity {
             } else if (selectedId == R.id.rb_level_expert) {
                 columnCount = 6;
                 rowCount = 5;
+            } else if (selectedId == rbLevelLarge.getId()) {
+                columnCount = 10;
+                rowCount = 10;
+            } else if (selectedId == rbLevelHuge.getId()) {
+                columnCount = 20;
+                rowCount = 20;
             }
             totalCards = columnCount * rowCount;
 
+            String seedText = etSeed.getText().toString().trim();
+            if (seedText.isEmpty()) {
+                fixedSeed = false;
+            } else {
+                try {
+                    fixedSeedValue = Long.parseLong(seedText);
+                    fixedSeed = true;
+                } catch (NumberFormatException e) {
+                    Toast.makeText(this, "种子必须是整数！", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+            }
+
             // 检查总卡片数是否为偶数
             if (totalCards % 2 != 0) {
                 Toast.makeText(this, "选择的级别总卡片数必须为偶数！", Toast.LENGTH_SHORT).show();
                 return;
             }
 
+            endlessMode = cbEndless.isChecked();
             dialog.dismiss();
 
-            Logd("new gridSizeX="+columnCount+",gridSizeY="+rowCount);
+            Logd("new gridSizeX=", columnCount, ",gridSizeY=", rowCount);
             startGame(); // 刷新游戏
         });
 
         dialog.show();
     }
 
+    private RadioButton addLevelButton(RadioGroup group, String text) {
+        RadioButton button = new RadioButton(this);
+        button.setId(View.generateViewId());
+        button.setText(text);
+        group.addView(button);
+        return button;
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (engine.getTotalCards() > 0) { // 首帧之后才生成棋盘，这之前没有可保存的
+            outState.putByteArray(KEY_SNAPSHOT, saveGame());
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        writeSnapshotFile(); // 进程在后台被杀时，下次启动从这里恢复
+        if (replayWriter != null) {
+            try {
+                replayWriter.flush(); // 被杀时至少保留已经玩过的部分
+            } catch (IOException e) {
+                closeReplayLog();
+            }
+        }
+    }
+
     @Override
     protected void onPause() {
         super.onPause();
-        timerHandler.removeCallbacks(updateTimerRunnable); // 页面不可见时停止计时器
+        resumed = false;
+        gameClock.pause(); // 页面不可见时暂停计时器，已用时间保留
+        // 动画也一起暂停，后台不再请求帧回调
+        animationDriver.pause();
+        gameBoardView.pauseAnimations();
+        frameStats.pause();
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        if (startTime != 0L && matchedPairsCount * 2 < totalCards) { // 游戏进行中才恢复计时器
-            timerHandler.post(updateTimerRunnable);
+        resumed = true;
+        if (!engine.isGameOver()) { // 游戏进行中才恢复计时器，结束后stop()过的计时器不会恢复
+            gameClock.resume();
+        }
+        animationDriver.resume();
+        gameBoardView.resumeAnimations();
+        frameStats.resume();
+        raiseMemoryTierIfRecovered();
+    }
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        scheduler.shutdown();
+        if (engine.isEndless()) {
+            finishReplayLog();
+        } else {
+            closeReplayLog();
         }
+        exportFrameStats();
+        // 成绩记录是进程共用的，新的Activity可能已经在用，这里不关闭。排队的追加写完后线程退出
+        resultsExecutor.shutdown();
+        imageCache.shutdown();
     }
+
+    // 日志都经过GameLog，release包里整个调用会被去掉。带数字的重载避免在调用处拼字符串
     void Logd(String msg) {
-        Log.d(TAG, msg);
+        GameLog.d(TAG, msg);
+    }
+    void Logd(String msg, int value) {
+        GameLog.d(TAG, msg, value);
+    }
+    void Logd(String msg, long value) {
+        GameLog.d(TAG, msg, value);
+    }
+    void Logd(String msg1, int value1, String msg2, int value2) {
+        GameLog.d(TAG, msg1, value1, msg2, value2);
     }
     void Loge(String msg) {
-        Log.e(TAG, msg);
+        GameLog.e(TAG, msg);
     }
 
 }
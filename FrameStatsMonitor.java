@@ -0,0 +1,221 @@
+package com.yao.memorytrain;
+
+import android.view.Choreographer;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+// 动画帧耗时统计：翻牌、翻回、消失、补牌出现动画进行时，记录相邻两帧的间隔，
+// 按动画类型分别统计p50/p95/p99和卡顿帧数。一局结束后追加写入本地CSV文件
+public class FrameStatsMonitor implements Choreographer.FrameCallback {
+    // 动画类型
+    public static final int TYPE_FLIP = 0;      // flipCard()
+    public static final int TYPE_FLIP_BACK = 1; // flipBack()
+    public static final int TYPE_VANISH = 2;    // vanishCard()
+    public static final int TYPE_APPEAR = 3;    // appearCard()，无尽模式补牌
+    private static final int TYPE_COUNT = 4;
+    private static final String[] TYPE_NAMES = {"flip", "flipBack", "vanish", "appear"};
+
+    private static final int MAX_SAMPLES = 4096; // 每种动画每局最多记录的帧数
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 16_666_667L;
+
+    // 帧回调来源，默认是Choreographer，测试时可以换成手动推进的假时钟
+    public interface FrameScheduler {
+        void postFrameCallback(Choreographer.FrameCallback callback);
+
+        void removeFrameCallback(Choreographer.FrameCallback callback);
+    }
+
+    private final FrameScheduler scheduler;
+    private final long[][] samples = new long[TYPE_COUNT][MAX_SAMPLES];
+    private final int[] sampleCounts = new int[TYPE_COUNT];
+    private final int[] activeCounts = new int[TYPE_COUNT]; // 每种动画正在进行的数量
+    private long frameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+    private long lastFrameNanos = 0;
+    private boolean frameScheduled = false;
+    private boolean paused = false;
+    private int columnCount;
+    private int rowCount;
+
+    public FrameStatsMonitor() {
+        this(new FrameScheduler() {
+            @Override
+            public void postFrameCallback(Choreographer.FrameCallback callback) {
+                Choreographer.getInstance().postFrameCallback(callback);
+            }
+
+            @Override
+            public void removeFrameCallback(Choreographer.FrameCallback callback) {
+                Choreographer.getInstance().removeFrameCallback(callback);
+            }
+        });
+    }
+
+    public FrameStatsMonitor(FrameScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    // 屏幕刷新率，用来判断卡顿帧：间隔超过1.5倍帧间隔算一次卡顿
+    public void setRefreshRate(float refreshRate) {
+        if (refreshRate > 0) {
+            frameIntervalNanos = (long) (1_000_000_000L / refreshRate);
+        }
+    }
+
+    // 新的一局开始，清空数据并记录棋盘大小
+    public void reset(int columnCount, int rowCount) {
+        this.columnCount = columnCount;
+        this.rowCount = rowCount;
+        Arrays.fill(sampleCounts, 0);
+        Arrays.fill(activeCounts, 0);
+        lastFrameNanos = 0;
+        if (frameScheduled) {
+            scheduler.removeFrameCallback(this);
+            frameScheduled = false;
+        }
+    }
+
+    public void animationStarted(int type) {
+        activeCounts[type]++;
+        if (!frameScheduled && !paused) {
+            frameScheduled = true;
+            scheduler.postFrameCallback(this);
+        }
+    }
+
+    // 页面不可见时停止采样，暂停期间的间隔不计入统计
+    public void pause() {
+        paused = true;
+        lastFrameNanos = 0;
+        if (frameScheduled) {
+            scheduler.removeFrameCallback(this);
+            frameScheduled = false;
+        }
+    }
+
+    public void resume() {
+        paused = false;
+        if (hasActiveAnimation() && !frameScheduled) {
+            frameScheduled = true;
+            scheduler.postFrameCallback(this);
+        }
+    }
+
+    public void animationEnded(int type) {
+        if (activeCounts[type] > 0) {
+            activeCounts[type]--;
+        }
+    }
+
+    private boolean hasActiveAnimation() {
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            if (activeCounts[i] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        if (lastFrameNanos != 0) {
+            long duration = frameTimeNanos - lastFrameNanos;
+            // 同一帧可能有多种动画在进行，每种都记一次
+            for (int type = 0; type < TYPE_COUNT; type++) {
+                if (activeCounts[type] > 0 && sampleCounts[type] < MAX_SAMPLES) {
+                    samples[type][sampleCounts[type]++] = duration;
+                }
+            }
+        }
+        if (hasActiveAnimation() && !paused) {
+            lastFrameNanos = frameTimeNanos;
+            frameScheduled = true;
+            scheduler.postFrameCallback(this);
+        } else {
+            lastFrameNanos = 0; // 空闲期间的间隔不算
+        }
+    }
+
+    // 上次导出之后有没有新的帧数据
+    public boolean hasSamples() {
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            if (sampleCounts[i] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 导出后清空已有的帧数据，正在进行的动画继续采样，同一局不会被导出两次
+    public void clearSamples() {
+        Arrays.fill(sampleCounts, 0);
+    }
+
+    public int getSampleCount(int type) {
+        return sampleCounts[type];
+    }
+
+    // 第percentile百分位的帧间隔（毫秒），没有数据时返回0
+    public float getPercentileMillis(int type, int percentile) {
+        int count = sampleCounts[type];
+        if (count == 0) {
+            return 0f;
+        }
+        long[] sorted = Arrays.copyOf(samples[type], count);
+        Arrays.sort(sorted);
+        int index = Math.min(count - 1, (int) Math.ceil(percentile / 100.0 * count) - 1);
+        return sorted[Math.max(index, 0)] / 1_000_000f;
+    }
+
+    public int getJankCount(int type) {
+        long threshold = frameIntervalNanos * 3 / 2;
+        int jank = 0;
+        for (int i = 0; i < sampleCounts[type]; i++) {
+            if (samples[type][i] > threshold) {
+                jank++;
+            }
+        }
+        return jank;
+    }
+
+    // 显示在浮层上的摘要，每种动画一行
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(columnCount).append('x').append(rowCount);
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            sb.append('\n').append(String.format(Locale.US, "%s: n=%d p50=%.1f p95=%.1f p99=%.1f jank=%d",
+                    TYPE_NAMES[type], sampleCounts[type],
+                    getPercentileMillis(type, 50), getPercentileMillis(type, 95), getPercentileMillis(type, 99),
+                    getJankCount(type)));
+        }
+        return sb.toString();
+    }
+
+    // 把本局的统计追加到CSV文件，每种动画一行，在调用方给的后台线程上写入，这里不自己开线程
+    public void export(File file, Executor executor) {
+        final StringBuilder sb = new StringBuilder();
+        long now = System.currentTimeMillis();
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            sb.append(String.format(Locale.US, "%d,%d,%d,%s,%d,%.2f,%.2f,%.2f,%d\n",
+                    now, columnCount, rowCount, TYPE_NAMES[type], sampleCounts[type],
+                    getPercentileMillis(type, 50), getPercentileMillis(type, 95), getPercentileMillis(type, 99),
+                    getJankCount(type)));
+        }
+        executor.execute(() -> {
+            boolean newFile = !file.exists();
+            try (FileWriter writer = new FileWriter(file, true)) {
+                if (newFile) {
+                    writer.write("timestamp,columns,rows,animation,frames,p50_ms,p95_ms,p99_ms,janky_frames\n");
+                }
+                writer.write(sb.toString());
+            } catch (IOException e) {
+                // 统计数据写失败不影响游戏
+            }
+        });
+    }
+}
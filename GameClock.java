@@ -0,0 +1,94 @@
+package com.yao.memorytrain;
+
+import android.view.Choreographer;
+
+// 游戏计时器：跟随Choreographer的帧时间计时，只在显示的秒数变化时回调，
+// 两次回调之间不唤醒。暂停时把已用时间累加起来，恢复后接着算，不会因为暂停而漂移
+public class GameClock implements Choreographer.FrameCallback {
+    public interface OnSecondChangedListener {
+        void onSecondChanged(int elapsedSeconds);
+    }
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private final OnSecondChangedListener listener;
+    private long accumulatedNanos = 0; // 暂停前累计的时间
+    private long resumeNanos = 0;      // 最近一次开始/恢复的时刻
+    private boolean running = false;
+    private boolean stopped = true;
+    private int lastSecond = -1;
+
+    public GameClock(OnSecondChangedListener listener) {
+        this.listener = listener;
+    }
+
+    // 从0开始计时
+    public void start() {
+        start(0);
+    }
+
+    // 从已用时间elapsedMillis接着计时，用于恢复存档
+    public void start(long elapsedMillis) {
+        Choreographer.getInstance().removeFrameCallback(this);
+        accumulatedNanos = elapsedMillis * NANOS_PER_MILLI;
+        lastSecond = -1;
+        stopped = false;
+        running = true;
+        resumeNanos = System.nanoTime();
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    public void pause() {
+        if (!running) {
+            return;
+        }
+        accumulatedNanos += System.nanoTime() - resumeNanos;
+        running = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    public void resume() {
+        if (running || stopped) {
+            return;
+        }
+        running = true;
+        resumeNanos = System.nanoTime();
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    // 游戏结束，停在当前时间，之后resume()不再生效
+    public void stop() {
+        pause();
+        stopped = true;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public long getElapsedMillis() {
+        long elapsed = accumulatedNanos;
+        if (running) {
+            elapsed += System.nanoTime() - resumeNanos;
+        }
+        return elapsed / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!running) {
+            return;
+        }
+        // 帧时间可能略早于resume的时刻，不能算成负数
+        long elapsed = accumulatedNanos + Math.max(0, frameTimeNanos - resumeNanos);
+        int second = (int) (elapsed / NANOS_PER_SECOND);
+        if (second != lastSecond) {
+            lastSecond = second;
+            listener.onSecondChanged(second);
+        }
+        // 下一次在显示的秒数变化的那一帧再回调
+        long delayMillis = ((second + 1) * NANOS_PER_SECOND - elapsed) / NANOS_PER_MILLI + 1;
+        Choreographer.getInstance().postFrameCallbackDelayed(this, delayMillis);
+    }
+}
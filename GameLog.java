@@ -0,0 +1,61 @@
+package com.yao.memorytrain;
+
+import android.util.Log;
+
+import androidx.core.os.TraceCompat;
+
+// 日志和Trace的统一入口。
+// release包里DEBUG为false，R8会把判断连同里面的字符串拼接一起去掉；
+// 带参数的重载在开关打开时才拼字符串，调用处不需要先拼好，也没有可变参数数组
+public final class GameLog {
+    public static final boolean DEBUG = BuildConfig.DEBUG;
+
+    private GameLog() {
+    }
+
+    public static void d(String tag, String msg) {
+        if (DEBUG) {
+            Log.d(tag, msg);
+        }
+    }
+
+    public static void d(String tag, String msg, int value) {
+        if (DEBUG) {
+            Log.d(tag, msg + value);
+        }
+    }
+
+    public static void d(String tag, String msg, long value) {
+        if (DEBUG) {
+            Log.d(tag, msg + value);
+        }
+    }
+
+    public static void d(String tag, String msg1, int value1, String msg2, int value2) {
+        if (DEBUG) {
+            Log.d(tag, msg1 + value1 + msg2 + value2);
+        }
+    }
+
+    public static void e(String tag, String msg) {
+        Log.e(tag, msg); // 错误日志始终输出
+    }
+
+    // 同步Trace区间，必须在同一线程成对调用
+    public static void beginSection(String name) {
+        TraceCompat.beginSection(name);
+    }
+
+    public static void endSection() {
+        TraceCompat.endSection();
+    }
+
+    // 异步Trace区间，用于跨多帧的动画，cookie区分同名的不同区间
+    public static void beginAsyncSection(String name, int cookie) {
+        TraceCompat.beginAsyncSection(name, cookie);
+    }
+
+    public static void endAsyncSection(String name, int cookie) {
+        TraceCompat.endAsyncSection(name, cookie);
+    }
+}
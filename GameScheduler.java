@@ -0,0 +1,76 @@
+package com.yao.memorytrain;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+// 游戏里所有延时回调的统一入口。每个回调记下提交时的局号(epoch)，
+// 开新局时局号加一并一次性移除所有还没执行的回调；已经出队的旧回调执行前也会再核对局号，
+// 上一局的判定、翻回之类的回调不会作用到新一局的棋盘上。
+// 按帧执行的回调没法一次性移除，只靠执行前核对局号作废
+public class GameScheduler {
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private int epoch = 0;
+
+    // 带局号的回调，只在局号没变时执行
+    private final class EpochTask implements Runnable, Choreographer.FrameCallback {
+        private final Runnable task;
+        private final int taskEpoch;
+
+        EpochTask(Runnable task, int taskEpoch) {
+            this.task = task;
+            this.taskEpoch = taskEpoch;
+        }
+
+        @Override
+        public void run() {
+            if (taskEpoch == epoch) {
+                task.run();
+            }
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            run();
+        }
+    }
+
+    // 开始新的一局，上一局所有未执行的回调作废
+    public int newEpoch() {
+        handler.removeCallbacksAndMessages(null);
+        return ++epoch;
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    // 异步回调（比如后台解码完成）自己记下局号，回到主线程时用它判断是否过期
+    public boolean isCurrent(int taskEpoch) {
+        return taskEpoch == epoch;
+    }
+
+    public void post(Runnable task) {
+        handler.post(new EpochTask(task, epoch));
+    }
+
+    public void postDelayed(Runnable task, long delayMillis) {
+        handler.postDelayed(new EpochTask(task, epoch), delayMillis);
+    }
+
+    // 在下一帧开始时执行，执行完接着就是这一帧的布局和绘制。耗时的工作拆成几批，每帧做一批
+    public void postNextFrame(Runnable task) {
+        Choreographer.getInstance().postFrameCallback(new EpochTask(task, epoch));
+    }
+
+    // 在下一帧画完之后执行：先等到下一帧开始，再排到这一帧的绘制后面
+    public void postAfterNextFrame(Runnable task) {
+        final int taskEpoch = epoch;
+        Choreographer.getInstance().postFrameCallback(frameTimeNanos -> handler.post(new EpochTask(task, taskEpoch)));
+    }
+
+    // 页面销毁时调用
+    public void shutdown() {
+        newEpoch();
+    }
+}
@@ -0,0 +1,60 @@
+package com.yao.memorytrain;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+// 程序生成的卡片正面：图案+底色，图片资源不够用时（大棋盘）补充无限多种不同的牌面。
+// 生成的牌面用负数ID表示，和资源ID（都是正数）区分开，由CardImageCache统一缓存
+public final class GeneratedFaceFactory {
+    // 图案字符，和底色组合出不同的牌面
+    private static final String GLYPHS = "♠♥♦♣★●▲■◆♪☀☂☃✿♞♜⚑☯";
+    private static final float GOLDEN_RATIO = 0.618034f; // 色相按黄金比例递增，相邻的牌颜色差别大
+
+    private GeneratedFaceFactory() {
+    }
+
+    // 第n个生成牌面的ID
+    public static int faceId(int n) {
+        return -1 - n;
+    }
+
+    public static boolean isGenerated(int faceId) {
+        return faceId < 0;
+    }
+
+    // 把生成的牌面画到一张width*height的Bitmap上，可以在后台线程调用
+    public static Bitmap render(int faceId, int width, int height) {
+        return render(faceId, width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    // 内存紧张时用RGB_565绘制，牌面不透明，画出来几乎一样
+    public static Bitmap render(int faceId, int width, int height, Bitmap.Config config) {
+        int n = -1 - faceId;
+        width = Math.max(width, 1);
+        height = Math.max(height, 1);
+        Bitmap bitmap = Bitmap.createBitmap(width, height, config);
+        Canvas canvas = new Canvas(bitmap);
+
+        int glyphIndex = n % GLYPHS.length();
+        int colorIndex = n / GLYPHS.length();
+        float hue = (colorIndex * GOLDEN_RATIO % 1f) * 360f;
+        canvas.drawColor(Color.HSVToColor(new float[] {hue, 0.35f, 0.95f}));
+
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTextAlign(Paint.Align.CENTER);
+        paint.setColor(Color.HSVToColor(new float[] {hue, 0.9f, 0.45f}));
+        paint.setTextSize(Math.min(width, height) * 0.6f);
+        float baseline = height / 2f - (paint.descent() + paint.ascent()) / 2f;
+        canvas.drawText(GLYPHS, glyphIndex, glyphIndex + 1, width / 2f, baseline, paint);
+
+        // 颜色转完一圈后可能相近，角上再标一个序号保证每种牌面都能区分
+        if (colorIndex > 0) {
+            paint.setTextSize(Math.min(width, height) * 0.2f);
+            paint.setTextAlign(Paint.Align.LEFT);
+            canvas.drawText(String.valueOf(colorIndex), width * 0.08f, height * 0.25f, paint);
+        }
+        return bitmap;
+    }
+}
@@ -0,0 +1,56 @@
+package com.yao.memorytrain;
+
+import android.widget.TextView;
+
+// HUD文字（时间、点击次数）：在复用的char数组里拼数字，每次更新不创建String
+public class HudText {
+    private final char[] buffer;
+    private final int prefixLength;
+
+    public HudText(String prefix) {
+        prefixLength = prefix.length();
+        buffer = new char[prefixLength + 16]; // 前缀后面最多放"mmmmmmm:ss"或10位整数
+        prefix.getChars(0, prefixLength, buffer, 0);
+    }
+
+    // 显示"前缀+数字"，例如"点击次数: 12"
+    public void setNumber(TextView view, int value) {
+        view.setText(buffer, 0, formatNumber(value));
+    }
+
+    // 显示"前缀+分:秒"，例如"时间: 01:05"，分钟超过两位时继续变长
+    public void setTime(TextView view, int totalSeconds) {
+        view.setText(buffer, 0, formatTime(totalSeconds));
+    }
+
+    // 以下两个方法只拼文字不碰View，返回getChars()里有效的长度，基准测试在JVM上直接调用
+    int formatNumber(int value) {
+        return writeNumber(prefixLength, Math.max(value, 0), 1);
+    }
+
+    int formatTime(int totalSeconds) {
+        int minutes = totalSeconds / 60;
+        int seconds = totalSeconds % 60;
+        int pos = writeNumber(prefixLength, minutes, 2);
+        buffer[pos++] = ':';
+        return writeNumber(pos, seconds, 2);
+    }
+
+    char[] getChars() {
+        return buffer;
+    }
+
+    // 从pos开始写入value，不足minDigits位时前面补0，返回写完后的位置
+    private int writeNumber(int pos, int value, int minDigits) {
+        int digits = 1;
+        for (int v = value / 10; v > 0; v /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, minDigits);
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + digits;
+    }
+}
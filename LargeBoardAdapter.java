@@ -0,0 +1,106 @@
+package com.yao.memorytrain;
+
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+// 大棋盘的列表适配器：只有屏幕内的格子才有CardView，
+// 滑动时复用CardView，并按BoardEngine里的状态重新绑定
+public class LargeBoardAdapter extends RecyclerView.Adapter<LargeBoardAdapter.CardHolder> {
+    public interface OnCellClickListener {
+        void onCellClicked(int index);
+    }
+
+    private static final int CARD_MARGIN = 2;
+
+    private final BoardEngine engine;
+    private final CardImageCache imageCache;
+    private final CardAnimationDriver animationDriver;
+    private final CardView.OnCardAnimationListener animationListener;
+    private final CardImageCache.OnImageReadyListener imageReadyListener;
+    private final OnCellClickListener clickListener;
+    private final int backImageResId;
+    private int cardWidth;
+    private int cardHeight;
+
+    public LargeBoardAdapter(BoardEngine engine, CardImageCache imageCache, CardAnimationDriver animationDriver,
+                             CardView.OnCardAnimationListener animationListener,
+                             CardImageCache.OnImageReadyListener imageReadyListener,
+                             OnCellClickListener clickListener, int backImageResId) {
+        this.engine = engine;
+        this.imageCache = imageCache;
+        this.animationDriver = animationDriver;
+        this.animationListener = animationListener;
+        this.imageReadyListener = imageReadyListener;
+        this.clickListener = clickListener;
+        this.backImageResId = backImageResId;
+    }
+
+    public void setCardSize(int cardWidth, int cardHeight) {
+        this.cardWidth = cardWidth;
+        this.cardHeight = cardHeight;
+    }
+
+    static class CardHolder extends RecyclerView.ViewHolder {
+        final CardView card;
+
+        CardHolder(CardView card) {
+            super(card);
+            this.card = card;
+        }
+    }
+
+    @NonNull
+    @Override
+    public CardHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        CardView card = new CardView(parent.getContext());
+        card.setImageCache(imageCache);
+        card.setAnimationDriver(animationDriver);
+        card.setOnCardAnimationListener(animationListener);
+
+        RecyclerView.LayoutParams layoutParams = new RecyclerView.LayoutParams(cardWidth, cardHeight);
+        layoutParams.setMargins(CARD_MARGIN, CARD_MARGIN, CARD_MARGIN, CARD_MARGIN);
+        card.setLayoutParams(layoutParams);
+
+        CardHolder holder = new CardHolder(card);
+        card.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                clickListener.onCellClicked(position);
+            }
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull CardHolder holder, int position) {
+        CardView card = holder.card;
+        ViewGroup.LayoutParams layoutParams = card.getLayoutParams();
+        if (layoutParams.width != cardWidth || layoutParams.height != cardHeight) {
+            layoutParams.width = cardWidth;
+            layoutParams.height = cardHeight;
+            card.setLayoutParams(layoutParams);
+        }
+
+        int face = engine.getFace(position);
+        card.setCard(face, face, backImageResId);
+        byte state = engine.getState(position);
+        card.showState(state == BoardEngine.STATE_REVEALED, state == BoardEngine.STATE_MATCHED);
+        // 只为进入屏幕的格子准备图片，内存随可见区域增长，而不是随棋盘大小。已配对的格子不显示，不用准备
+        if (state != BoardEngine.STATE_MATCHED) {
+            imageCache.preloadOne(face, imageReadyListener);
+        }
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull CardHolder holder) {
+        // 滑出屏幕时动画直接结束，保证回合判定不会等一个已经看不见的动画
+        holder.card.endAnimation();
+    }
+
+    @Override
+    public int getItemCount() {
+        return engine.getTotalCards();
+    }
+}
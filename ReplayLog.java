@@ -0,0 +1,182 @@
+package com.yao.memorytrain;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+// 一局游戏的操作记录，纯Java实现，Android和JVM上的ReplayRunner共用。
+// 格式：[int 魔数][byte 版本][long 种子][byte 无尽模式][varint 列数][varint 行数][varint 牌面数][每个牌面一个int]，
+// 之后每次有效点击一条记录：[varint 格子下标*4+2][varint 距上次点击的毫秒数]，
+// 无尽模式每次补牌一条记录：[varint 格子下标*4+1]，每次判定一条记录：[varint 3]，
+// 一局结束时写入结束标记0和最终的[varint 配对数][varint 点击次数]，回放时用来校验。
+// 没有结束标记的记录（中途退出）可以读出来，但不能校验
+public final class ReplayLog {
+    private static final int MAGIC = 0x4D54524C; // "MTRL"
+    private static final byte VERSION = 3;
+    private static final int END_MARKER = 0;
+    private static final int TYPE_REFILL = 1;
+    private static final int TYPE_CLICK = 2;
+    private static final int TYPE_RESOLVE = 3;
+
+    // Recording.clickIndices里的判定记录
+    public static final int RESOLVE = Integer.MIN_VALUE;
+
+    private ReplayLog() {
+    }
+
+    // 边玩边写，每次点击只写几个字节到缓冲区
+    public static final class Writer {
+        private final DataOutputStream out;
+        private long lastClickMillis;
+
+        public Writer(OutputStream out, long seed, int columnCount, int rowCount, int[] facePool,
+                      boolean endless, long startMillis) throws IOException {
+            this.out = new DataOutputStream(out);
+            this.lastClickMillis = startMillis;
+            this.out.writeInt(MAGIC);
+            this.out.writeByte(VERSION);
+            this.out.writeLong(seed);
+            this.out.writeByte(endless ? 1 : 0);
+            writeVarInt(this.out, columnCount);
+            writeVarInt(this.out, rowCount);
+            writeVarInt(this.out, facePool.length);
+            for (int face : facePool) {
+                this.out.writeInt(face);
+            }
+        }
+
+        // 记录一次被engine接受的点击
+        public void click(int index, long timeMillis) throws IOException {
+            writeVarInt(out, index * 4 + TYPE_CLICK);
+            writeVarInt(out, (int) Math.max(0, timeMillis - lastClickMillis));
+            lastClickMillis = timeMillis;
+        }
+
+        // 记录一次补牌，回放时补牌和点击的先后顺序要和实际一致
+        public void refill(int index) throws IOException {
+            writeVarInt(out, index * 4 + TYPE_REFILL);
+        }
+
+        // 记录一次判定。界面上要等翻牌动画结束才判定，中间可能插进补牌，
+        // 补牌时避开的格子取决于判定了没有，所以判定也要按实际顺序记下来
+        public void resolve() throws IOException {
+            writeVarInt(out, TYPE_RESOLVE);
+        }
+
+        public void finish(int matchedPairs, int clickCount) throws IOException {
+            writeVarInt(out, END_MARKER);
+            writeVarInt(out, matchedPairs);
+            writeVarInt(out, clickCount);
+            out.flush();
+        }
+
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    // 读出来的一局记录
+    public static final class Recording {
+        public long seed;
+        public boolean endless;
+        public int columnCount;
+        public int rowCount;
+        public int[] facePool;
+        public int clickCount;       // 记录到的点击数，包括补牌和判定记录
+        public int[] clickIndices;   // 每次点击的格子下标，长度至少为clickCount。补牌记为-1-格子下标，判定记为RESOLVE
+        public int[] clickDelays;    // 每次点击距上次点击的毫秒数，补牌和判定为0
+        public boolean finished;     // 是否有结束标记
+        public int expectedMatchedPairs;
+        public int expectedClickCount;
+    }
+
+    public static Recording read(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a replay log");
+        }
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("unsupported replay log version " + version);
+        }
+        Recording recording = new Recording();
+        recording.seed = in.readLong();
+        recording.endless = in.readByte() != 0;
+        recording.columnCount = readVarInt(in);
+        recording.rowCount = readVarInt(in);
+        int poolSize = readVarInt(in);
+        recording.facePool = new int[poolSize];
+        for (int i = 0; i < poolSize; i++) {
+            recording.facePool[i] = in.readInt();
+        }
+        int[] indices = new int[64];
+        int[] delays = new int[64];
+        int count = 0;
+        while (true) {
+            int value;
+            try {
+                value = readVarInt(in);
+            } catch (EOFException e) {
+                break; // 没有结束标记
+            }
+            if (value == END_MARKER) {
+                recording.expectedMatchedPairs = readVarInt(in);
+                recording.expectedClickCount = readVarInt(in);
+                recording.finished = true;
+                break;
+            }
+            if (count == indices.length) {
+                indices = Arrays.copyOf(indices, count * 2);
+                delays = Arrays.copyOf(delays, count * 2);
+            }
+            int type = value & 3;
+            int index = value >>> 2;
+            if (type == TYPE_CLICK) {
+                indices[count] = index;
+                delays[count] = readVarInt(in);
+            } else if (type == TYPE_REFILL) {
+                indices[count] = -1 - index;
+                delays[count] = 0;
+            } else if (type == TYPE_RESOLVE) {
+                indices[count] = RESOLVE;
+                delays[count] = 0;
+            } else {
+                throw new IOException("malformed replay record " + value);
+            }
+            count++;
+        }
+        recording.clickCount = count;
+        recording.clickIndices = indices;
+        recording.clickDelays = delays;
+        return recording;
+    }
+
+    // 7位一组的变长整数，格子下标和点击间隔通常1~2个字节
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+}
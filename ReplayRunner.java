@@ -0,0 +1,111 @@
+package com.yao.memorytrain;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+// 在普通JVM上全速回放ReplayLog记录的对局，不依赖Android。
+// 每局按记录的种子重新生成棋盘，按顺序重放点击、补牌和判定（不等动画），
+// 最后核对配对数和点击次数是否和记录一致。用于回归测试和用真实玩家操作做性能对比。
+// 用法：java com.yao.memorytrain.ReplayRunner [-n 重复次数] 文件或目录...
+public final class ReplayRunner {
+    private ReplayRunner() {
+    }
+
+    // 回放一局，结果和记录一致时返回true。engine可以复用，避免每局分配
+    public static boolean replay(BoardEngine engine, ReplayLog.Recording recording, Random random) {
+        random.setSeed(recording.seed);
+        engine.newGame(recording.columnCount, recording.rowCount, recording.facePool, random, recording.endless);
+        for (int i = 0; i < recording.clickCount; i++) {
+            int index = recording.clickIndices[i];
+            if (index == ReplayLog.RESOLVE) {
+                engine.resolve();
+            } else if (index < 0) {
+                engine.refill(-1 - index); // 无尽模式的补牌
+            } else {
+                engine.select(index);
+            }
+        }
+        return engine.getMatchedPairsCount() == recording.expectedMatchedPairs
+                && engine.getClickCount() == recording.expectedClickCount;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int repeat = 1;
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-n".equals(args[i]) && i + 1 < args.length) {
+                repeat = Integer.parseInt(args[++i]);
+            } else {
+                collect(new File(args[i]), files);
+            }
+        }
+
+        List<ReplayLog.Recording> recordings = new ArrayList<>();
+        for (File file : files) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+                ReplayLog.Recording recording = ReplayLog.read(in);
+                if (recording.finished) {
+                    recordings.add(recording);
+                } else {
+                    System.out.println("SKIP " + file + " (unfinished)");
+                }
+            } catch (IOException e) {
+                System.out.println("SKIP " + file + " (" + e.getMessage() + ")");
+            }
+        }
+        if (recordings.isEmpty()) {
+            System.out.println("no replays");
+            return;
+        }
+
+        BoardEngine engine = new BoardEngine();
+        Random random = new Random();
+        int failures = 0;
+        for (int i = 0; i < recordings.size(); i++) {
+            if (!replay(engine, recordings.get(i), random)) {
+                failures++;
+                System.out.println("MISMATCH seed=" + recordings.get(i).seed
+                        + " matched=" + engine.getMatchedPairsCount() + "/" + recordings.get(i).expectedMatchedPairs
+                        + " clicks=" + engine.getClickCount() + "/" + recordings.get(i).expectedClickCount);
+            }
+        }
+
+        // 校验之后再计时，计时的循环里只有回放本身
+        long clicks = 0;
+        long startNanos = System.nanoTime();
+        for (int r = 0; r < repeat; r++) {
+            for (int i = 0; i < recordings.size(); i++) {
+                replay(engine, recordings.get(i), random);
+                clicks += recordings.get(i).clickCount;
+            }
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long games = (long) repeat * recordings.size();
+        System.out.println(String.format(Locale.US,
+                "replays=%d failures=%d games=%d clicks=%d time_ms=%.1f games_per_sec=%.0f",
+                recordings.size(), failures, games, clicks, elapsedNanos / 1e6, games * 1e9 / Math.max(elapsedNanos, 1)));
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void collect(File file, List<File> out) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    collect(child, out);
+                }
+            }
+        } else {
+            out.add(file);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.yao.memorytrain;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// 本地成绩记录，纯Java实现，可以在JVM上测试。
+// 每局一条定长记录追加到文件末尾，从不修改已写入的记录；读的时候把文件映射到内存。
+// 打开时扫描一遍文件建立每个级别的汇总（局数、最好时间、最少点击），之后追加时同步更新，
+// 统计页面直接读汇总，不用再扫文件。
+// 每条记录带CRC，写到一半被杀掉的尾部记录在下次打开时会被校验出来并截掉。
+// 方法都是同步的，追加写文件应该放在后台线程调用。
+// 追加位置按内存里的记录数算，所以同一个文件在进程里只能有一个实例，界面通过shared()取
+public class ResultsStore {
+    private static final int MAGIC = 0x4D545253; // "MTRS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    // 记录格式：[short 列数][short 行数][int 点击次数][long 用时ms][long 种子][long 时间戳][int CRC]
+    public static final int RECORD_SIZE = 36;
+    private static final int CRC_OFFSET = 32;
+
+    // 进程内按文件路径共享的实例。旋转屏幕时新旧Activity各有自己的后台线程，
+    // 如果各自打开一份，两边按各自的记录数算出同一个追加位置，后写的会覆盖先写的
+    private static final Map<String, ResultsStore> SHARED = new HashMap<>();
+
+    // 一局的成绩
+    public static final class Result {
+        public int columnCount;
+        public int rowCount;
+        public int clickCount;
+        public long timeMillis;
+        public long seed;
+        public long timestamp;
+    }
+
+    // 一个级别的汇总
+    public static final class LevelSummary {
+        public final int columnCount;
+        public final int rowCount;
+        public int gameCount;
+        public int fewestClicks = Integer.MAX_VALUE;
+        public long bestTimeMillis = Long.MAX_VALUE;
+        public long totalClicks;
+        public long totalTimeMillis;
+
+        LevelSummary(int columnCount, int rowCount) {
+            this.columnCount = columnCount;
+            this.rowCount = rowCount;
+        }
+
+        LevelSummary(LevelSummary other) {
+            this(other.columnCount, other.rowCount);
+            gameCount = other.gameCount;
+            fewestClicks = other.fewestClicks;
+            bestTimeMillis = other.bestTimeMillis;
+            totalClicks = other.totalClicks;
+            totalTimeMillis = other.totalTimeMillis;
+        }
+
+        void add(int clicks, long timeMillis) {
+            gameCount++;
+            fewestClicks = Math.min(fewestClicks, clicks);
+            bestTimeMillis = Math.min(bestTimeMillis, timeMillis);
+            totalClicks += clicks;
+            totalTimeMillis += timeMillis;
+        }
+    }
+
+    private final File file;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private MappedByteBuffer mapped; // 只读映射，文件变长后按需重新映射
+    private long mappedSize;
+    private int recordCount;
+    private final Map<Integer, LevelSummary> summaries = new HashMap<>();
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+    private final byte[] crcScratch = new byte[CRC_OFFSET];
+
+    public ResultsStore(File file) {
+        this.file = file;
+    }
+
+    // 进程内这个文件唯一的实例，不用关闭，每次追加都已经刷到磁盘
+    public static ResultsStore shared(File file) {
+        synchronized (SHARED) {
+            String key = file.getAbsolutePath();
+            ResultsStore store = SHARED.get(key);
+            if (store == null) {
+                store = new ResultsStore(file);
+                SHARED.put(key, store);
+            }
+            return store;
+        }
+    }
+
+    // 打开文件并重建汇总。尾部校验失败的记录（上次写到一半）会被截掉
+    public synchronized void open() throws IOException {
+        if (channel != null) {
+            return;
+        }
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            channel.force(false);
+            size = HEADER_SIZE;
+        }
+        ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            close();
+            throw new IOException("not a results file: " + file);
+        }
+
+        summaries.clear();
+        int count = (int) ((size - HEADER_SIZE) / RECORD_SIZE);
+        int valid = 0;
+        while (valid < count) {
+            int offset = HEADER_SIZE + valid * RECORD_SIZE;
+            if (!checkRecord(map, offset)) {
+                break; // 后面的都不可信
+            }
+            summaryFor(map.getShort(offset), map.getShort(offset + 2))
+                    .add(map.getInt(offset + 4), map.getLong(offset + 8));
+            valid++;
+        }
+        recordCount = valid;
+        long validSize = HEADER_SIZE + (long) valid * RECORD_SIZE;
+        if (validSize != size) {
+            channel.truncate(validSize);
+            channel.force(false);
+        }
+        mapped = null;
+        mappedSize = 0;
+    }
+
+    // 追加一局的成绩，写入并刷到磁盘后才更新汇总
+    public synchronized void append(Result result) throws IOException {
+        if (channel == null) {
+            throw new IOException("results store not open");
+        }
+        writeBuffer.clear();
+        writeBuffer.putShort((short) result.columnCount);
+        writeBuffer.putShort((short) result.rowCount);
+        writeBuffer.putInt(result.clickCount);
+        writeBuffer.putLong(result.timeMillis);
+        writeBuffer.putLong(result.seed);
+        writeBuffer.putLong(result.timestamp);
+        crc.reset();
+        crc.update(writeBuffer.array(), 0, CRC_OFFSET);
+        writeBuffer.putInt((int) crc.getValue());
+        writeBuffer.flip();
+
+        long position = HEADER_SIZE + (long) recordCount * RECORD_SIZE;
+        while (writeBuffer.hasRemaining()) {
+            position += channel.write(writeBuffer, position);
+        }
+        channel.force(false);
+        recordCount++;
+        summaryFor(result.columnCount, result.rowCount).add(result.clickCount, result.timeMillis);
+    }
+
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    // 某个级别的汇总副本，没有玩过时返回null
+    public synchronized LevelSummary getSummary(int columnCount, int rowCount) {
+        LevelSummary summary = summaries.get(levelKey(columnCount, rowCount));
+        return summary != null ? new LevelSummary(summary) : null;
+    }
+
+    // 所有玩过的级别的汇总副本
+    public synchronized List<LevelSummary> getSummaries() {
+        List<LevelSummary> list = new ArrayList<>(summaries.size());
+        for (LevelSummary summary : summaries.values()) {
+            list.add(new LevelSummary(summary));
+        }
+        return list;
+    }
+
+    // 某个级别最近的limit局，最新的在前。从文件末尾往前找，只读映射内存
+    public synchronized List<Result> getRecent(int columnCount, int rowCount, int limit) throws IOException {
+        List<Result> list = new ArrayList<>();
+        if (channel == null) {
+            return list;
+        }
+        long size = HEADER_SIZE + (long) recordCount * RECORD_SIZE;
+        if (mapped == null || mappedSize != size) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mappedSize = size;
+        }
+        for (int i = recordCount - 1; i >= 0 && list.size() < limit; i--) {
+            int offset = HEADER_SIZE + i * RECORD_SIZE;
+            if (mapped.getShort(offset) != columnCount || mapped.getShort(offset + 2) != rowCount) {
+                continue;
+            }
+            Result result = new Result();
+            result.columnCount = columnCount;
+            result.rowCount = rowCount;
+            result.clickCount = mapped.getInt(offset + 4);
+            result.timeMillis = mapped.getLong(offset + 8);
+            result.seed = mapped.getLong(offset + 16);
+            result.timestamp = mapped.getLong(offset + 24);
+            list.add(result);
+        }
+        return list;
+    }
+
+    public synchronized void close() throws IOException {
+        mapped = null;
+        mappedSize = 0;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        if (raf != null) {
+            raf.close();
+            raf = null;
+        }
+    }
+
+    private boolean checkRecord(ByteBuffer map, int offset) {
+        map.position(offset);
+        map.get(crcScratch);
+        crc.reset();
+        crc.update(crcScratch, 0, CRC_OFFSET);
+        return (int) crc.getValue() == map.getInt(offset + CRC_OFFSET);
+    }
+
+    private LevelSummary summaryFor(int columnCount, int rowCount) {
+        int key = levelKey(columnCount, rowCount);
+        LevelSummary summary = summaries.get(key);
+        if (summary == null) {
+            summary = new LevelSummary(columnCount, rowCount);
+            summaries.put(key, summary);
+        }
+        return summary;
+    }
+
+    private static int levelKey(int columnCount, int rowCount) {
+        return (columnCount << 16) | rowCount;
+    }
+}
@@ -0,0 +1,83 @@
+package com.yao.memorytrain;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+// 启动耗时统计：冷启动时从onCreate到首帧画完(TTFF)、到棋盘可以点击(TTI)的时间；
+// 之后每次开局只记从开局到可以点击的时间。按级别和渲染方式追加写入本地CSV，浮层上显示最近一次
+public class StartupStats {
+    private static final String[] RENDER_MODE_NAMES = {"views", "canvas", "recycler"};
+
+    private long createNanos;
+    private long firstFrameNanos;
+    private long boardStartNanos;
+    private boolean coldStart = false; // 还没有记录过冷启动的第一局
+    private int columnCount;
+    private int rowCount;
+    private int renderMode;
+    private float lastTtffMillis = -1;
+    private float lastTtiMillis = -1;
+
+    // onCreate一开始调用
+    public void markCreate() {
+        createNanos = System.nanoTime();
+        coldStart = true;
+    }
+
+    // 首帧画完之后调用
+    public void markFirstFrame() {
+        firstFrameNanos = System.nanoTime();
+    }
+
+    // 开始生成棋盘、创建卡片
+    public void beginBoard(int columnCount, int rowCount, int renderMode) {
+        this.columnCount = columnCount;
+        this.rowCount = rowCount;
+        this.renderMode = renderMode;
+        boardStartNanos = System.nanoTime();
+    }
+
+    // 棋盘可以点击了，把这次的耗时追加到CSV文件，在调用方给的后台线程上写入
+    public void markInteractive(File file, Executor executor) {
+        long now = System.nanoTime();
+        lastTtiMillis = (coldStart ? now - createNanos : now - boardStartNanos) / 1_000_000f;
+        lastTtffMillis = coldStart ? (firstFrameNanos - createNanos) / 1_000_000f : -1;
+        float boardMillis = (now - boardStartNanos) / 1_000_000f;
+        final String line = String.format(Locale.US, "%d,%d,%d,%s,%b,%.1f,%.1f,%.1f\n",
+                System.currentTimeMillis(), columnCount, rowCount, RENDER_MODE_NAMES[renderMode], coldStart,
+                lastTtffMillis, lastTtiMillis, boardMillis);
+        coldStart = false;
+        executor.execute(() -> {
+            boolean newFile = !file.exists();
+            try (FileWriter writer = new FileWriter(file, true)) {
+                if (newFile) {
+                    writer.write("timestamp,columns,rows,render_mode,cold_start,ttff_ms,tti_ms,board_ms\n");
+                }
+                writer.write(line);
+            } catch (IOException e) {
+                // 统计数据写失败不影响游戏
+            }
+        });
+    }
+
+    public float getLastTtffMillis() {
+        return lastTtffMillis;
+    }
+
+    public float getLastTtiMillis() {
+        return lastTtiMillis;
+    }
+
+    // 显示在浮层上的一行，冷启动之后的开局没有TTFF
+    public String summary() {
+        if (lastTtiMillis < 0) {
+            return "startup: -";
+        }
+        return String.format(Locale.US, "startup: %dx%d %s ttff=%s tti=%.0fms",
+                columnCount, rowCount, RENDER_MODE_NAMES[renderMode],
+                lastTtffMillis < 0 ? "-" : String.format(Locale.US, "%.0fms", lastTtffMillis), lastTtiMillis);
+    }
+}
@@ -0,0 +1,142 @@
+package com.yao.memorytrain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 热路径的JMH基准测试，纯Java，在普通JVM上运行：
+// 各个级别和超大棋盘的生成、一回合的翻牌判定、按答案配完一整局、计时器文字的拼接。
+// jmh/和test/一样是单独的源码集，依赖jmh-core和jmh-generator-annprocess，和游戏在同一个包里，
+// 可以直接调用HudText的拼字方法。结果用JSON输出，方便和上一次比较：
+//   java -jar memorytrain-jmh.jar -rf json -rff board-benchmarks.json
+// 需要Android的CardView建卡片在test/CardViewSetupBenchmarkTest里用Robolectric测
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+public class BoardBenchmarks {
+
+    // 一个级别的棋盘，格式是"列x行"，包括设置里的各个级别和超过资源图片数的大棋盘
+    @State(Scope.Thread)
+    public static class Board {
+        @Param({"3x2", "4x3", "5x4", "6x5", "10x10", "20x20", "50x50", "100x100"})
+        public String level;
+
+        int columns;
+        int rows;
+        int[] facePool;
+        Random random;
+        BoardEngine engine;
+        int[] mismatch;
+        int[] solution;
+        ByteBuffer snapshot;
+
+        @Setup
+        public void setUp() {
+            int split = level.indexOf('x');
+            columns = Integer.parseInt(level.substring(0, split));
+            rows = Integer.parseInt(level.substring(split + 1));
+            facePool = BenchSupport.facePool(columns * rows / 2);
+            random = new Random(42);
+            engine = new BoardEngine();
+            engine.newGame(columns, rows, facePool, new Random(42));
+            mismatch = BenchSupport.findMismatch(engine);
+            solution = pairOrder(engine);
+            // 每局开始时从存档恢复同一个棋盘，不重新洗牌，恢复只是数组拷贝
+            snapshot = ByteBuffer.allocate(engine.getSnapshotSize());
+            engine.writeSnapshot(snapshot);
+        }
+    }
+
+    // 计时器文字，每次调用走一秒
+    @State(Scope.Thread)
+    public static class Clock {
+        final HudText timeText = new HudText("时间: ");
+        int seconds = 0;
+
+        int next() {
+            seconds = (seconds + 1) % 6000;
+            return seconds;
+        }
+    }
+
+    @Benchmark
+    public void newGame(Board board, Blackhole blackhole) {
+        board.engine.newGame(board.columns, board.rows, board.facePool, board.random);
+        blackhole.consume(board.engine.getFace(0));
+    }
+
+    // 翻两张不同的牌再判定，牌翻回背面，棋盘状态不变，可以反复测
+    @Benchmark
+    public void turnMismatch(Board board, Blackhole blackhole) {
+        BoardEngine engine = board.engine;
+        engine.select(board.mismatch[0]);
+        engine.select(board.mismatch[1]);
+        blackhole.consume(engine.resolve());
+    }
+
+    // 按已知答案把一整局配完，每次调用是一局
+    @Benchmark
+    public void solveGame(Board board, Blackhole blackhole) {
+        BoardEngine engine = board.engine;
+        board.snapshot.rewind();
+        engine.readSnapshot(board.snapshot);
+        int[] solution = board.solution;
+        for (int i = 0; i < solution.length; i += 2) {
+            engine.select(solution[i]);
+            engine.select(solution[i + 1]);
+            blackhole.consume(engine.resolve());
+        }
+    }
+
+    @Benchmark
+    public void formatTimeHudText(Clock clock, Blackhole blackhole) {
+        blackhole.consume(clock.timeText.formatTime(clock.next()));
+        blackhole.consume(clock.timeText.getChars());
+    }
+
+    // 旧的updateTimerRunnable每秒用String.format拼一个新字符串，作为对照
+    @Benchmark
+    public String formatTimeStringFormat(Clock clock) {
+        int seconds = clock.next();
+        return String.format(Locale.US, "时间: %02d:%02d", seconds / 60, seconds % 60);
+    }
+
+    // 把格子按配对顺序排好：order[2k]和order[2k+1]是同一种牌面。只在测量前调用一次
+    static int[] pairOrder(BoardEngine engine) {
+        int total = engine.getTotalCards();
+        int[] order = new int[total];
+        int count = 0;
+        boolean[] used = new boolean[total];
+        for (int i = 0; i < total; i++) {
+            if (used[i]) {
+                continue;
+            }
+            for (int j = i + 1; j < total; j++) {
+                if (!used[j] && engine.getFace(j) == engine.getFace(i)) {
+                    used[i] = true;
+                    used[j] = true;
+                    order[count++] = i;
+                    order[count++] = j;
+                    break;
+                }
+            }
+        }
+        return order;
+    }
+}
@@ -0,0 +1,148 @@
+package com.yao.memorytrain;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// 存档可能被截断、是旧的或者被改坏，读出来的棋盘要么和写入时一样，要么被拒绝
+public class BoardEngineSnapshotTest {
+    // 存档头部各字段的偏移：版本号、列数、行数、第一张、第二张、配对数、点击次数、无尽模式
+    private static final int COLUMNS_OFFSET = 1;
+    private static final int ROWS_OFFSET = 5;
+    private static final int FIRST_OFFSET = 9;
+    private static final int SECOND_OFFSET = 13;
+    private static final int MATCHED_OFFSET = 17;
+    private static final int HEADER_SIZE = 26;
+
+    private int[] pool;
+    private BoardEngine engine;
+
+    @Before
+    public void setUp() {
+        pool = new int[6];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = i + 1;
+        }
+        engine = new BoardEngine();
+        engine.newGame(4, 3, pool, new Random(5));
+    }
+
+    @Test
+    public void roundTripWithPendingPair() {
+        int first = 0;
+        int second = mismatchOf(first);
+        engine.select(first);
+        engine.select(second);
+        ByteBuffer snapshot = write();
+
+        BoardEngine restored = new BoardEngine();
+        assertTrue(restored.readSnapshot(snapshot));
+        assertTrue(restored.attachFacePool(pool, new Random()));
+        assertEquals(first, restored.getFirstIndex());
+        assertEquals(second, restored.getSecondIndex());
+        assertEquals(2, restored.getClickCount());
+        assertArrayEquals(faces(engine), faces(restored));
+        assertEquals(BoardEngine.RESOLVE_MISMATCH, restored.resolve());
+    }
+
+    @Test
+    public void rejectsOutOfRangeTurnIndices() {
+        assertRejected(write().putInt(FIRST_OFFSET, -7));
+        assertRejected(write().putInt(FIRST_OFFSET, 12));
+        assertRejected(write().putInt(SECOND_OFFSET, 0)); // 没有第一张却有第二张
+    }
+
+    @Test
+    public void rejectsOverflowingBoardSize() {
+        // 65536*65536在int里溢出成0，不能被当成空棋盘接受
+        assertRejected(write().putInt(COLUMNS_OFFSET, 65536).putInt(ROWS_OFFSET, 65536));
+        assertRejected(write().putInt(COLUMNS_OFFSET, -4));
+    }
+
+    @Test
+    public void rejectsUnknownStateByte() {
+        ByteBuffer snapshot = write();
+        snapshot.put(stateOffset(3), (byte) 7);
+        assertRejected(snapshot);
+    }
+
+    // 翻开的牌只能是存档里记的本回合第一张、第二张
+    @Test
+    public void rejectsRevealedCellOutsideTurn() {
+        ByteBuffer snapshot = write();
+        snapshot.put(stateOffset(5), BoardEngine.STATE_REVEALED);
+        assertRejected(snapshot);
+
+        engine.select(2);
+        ByteBuffer pending = write();
+        pending.put(stateOffset(2), BoardEngine.STATE_HIDDEN);
+        assertRejected(pending);
+    }
+
+    @Test
+    public void rejectsMatchedCountMismatch() {
+        assertRejected(write().putInt(MATCHED_OFFSET, 1));
+    }
+
+    @Test
+    public void rejectsTruncatedSnapshot() {
+        ByteBuffer snapshot = write();
+        snapshot.limit(snapshot.limit() - 1);
+        assertRejected(snapshot);
+    }
+
+    // 结构没问题，但棋盘上的图片不在池里，或者不是正好成对
+    @Test
+    public void attachRejectsFacesOutsidePool() {
+        ByteBuffer snapshot = write();
+        snapshot.putInt(HEADER_SIZE, 99);
+        BoardEngine restored = new BoardEngine();
+        assertTrue(restored.readSnapshot(snapshot));
+        assertFalse(restored.attachFacePool(pool, new Random()));
+
+        ByteBuffer unpaired = write();
+        int other = engine.getFace(0) == pool[0] ? pool[1] : pool[0];
+        unpaired.putInt(HEADER_SIZE, other); // 一种图片变成三张，另一种只剩一张
+        BoardEngine restoredUnpaired = new BoardEngine();
+        assertTrue(restoredUnpaired.readSnapshot(unpaired));
+        assertFalse(restoredUnpaired.attachFacePool(pool, new Random()));
+    }
+
+    private ByteBuffer write() {
+        ByteBuffer buffer = ByteBuffer.allocate(engine.getSnapshotSize());
+        engine.writeSnapshot(buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    private int stateOffset(int index) {
+        return HEADER_SIZE + engine.getTotalCards() * 4 + index;
+    }
+
+    private static void assertRejected(ByteBuffer snapshot) {
+        BoardEngine restored = new BoardEngine();
+        assertFalse(restored.readSnapshot(snapshot));
+        assertEquals(0, restored.getTotalCards()); // 被拒绝时棋盘保持不变
+    }
+
+    private int mismatchOf(int index) {
+        for (int i = 0; i < engine.getTotalCards(); i++) {
+            if (engine.getFace(i) != engine.getFace(index)) {
+                return i;
+            }
+        }
+        throw new AssertionError("no mismatch for " + index);
+    }
+
+    private static int[] faces(BoardEngine board) {
+        return Arrays.copyOf(board.getFaces(), board.getTotalCards());
+    }
+}
@@ -0,0 +1,107 @@
+package com.yao.memorytrain;
+
+import android.content.Context;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.ColorDrawable;
+import android.os.Looper;
+import android.view.ContextThemeWrapper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.LooperMode;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+// 翻牌时UI线程不解码：正面图片只在后台预解码，没准备好时先显示占位色
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class CardViewPreloadTest {
+    private static final int FACE = R.drawable.card_front_ace1;
+    private static final int BACK = R.drawable.card_back;
+    private static final Duration FLIP_TIME = Duration.ofMillis(500); // 翻牌两个半段各200ms
+
+    private Context context;
+    private CardImageCache imageCache;
+
+    @Before
+    public void setUp() {
+        context = new ContextThemeWrapper(ApplicationProvider.getApplicationContext(),
+                androidx.appcompat.R.style.Theme_AppCompat_Light);
+        imageCache = new CardImageCache(context.getResources());
+        imageCache.setTargetSize(120, 160);
+    }
+
+    @After
+    public void tearDown() {
+        imageCache.shutdown();
+    }
+
+    @Test
+    public void flipBeforePreloadShowsPlaceholderWithoutDecoding() throws InterruptedException {
+        CardView card = newCard();
+        int decodesBefore = imageCache.getMainThreadDecodeCount(); // 背面在setCard时解码一次
+
+        card.flipCard();
+        shadowOf(Looper.getMainLooper()).idleFor(FLIP_TIME);
+
+        assertTrue(card.isFront());
+        assertFalse(card.isAnimating());
+        assertTrue(card.getDrawable() instanceof ColorDrawable);
+        assertEquals(decodesBefore, imageCache.getMainThreadDecodeCount());
+
+        // 后台解码好之后替换占位色，仍然不在UI线程解码
+        preloadAndWait(FACE, card);
+        assertTrue(card.getDrawable() instanceof BitmapDrawable);
+        assertEquals(decodesBefore, imageCache.getMainThreadDecodeCount());
+    }
+
+    @Test
+    public void flipAfterPreloadUsesCachedBitmap() throws InterruptedException {
+        preloadAndWait(FACE, null);
+        CardView card = newCard();
+        int decodesBefore = imageCache.getMainThreadDecodeCount();
+        int totalDecodesBefore = imageCache.getDecodeCount();
+
+        card.flipCard();
+        shadowOf(Looper.getMainLooper()).idleFor(FLIP_TIME);
+
+        assertTrue(card.isFront());
+        assertTrue(card.getDrawable() instanceof BitmapDrawable);
+        assertEquals(decodesBefore, imageCache.getMainThreadDecodeCount());
+        assertEquals(totalDecodesBefore, imageCache.getDecodeCount());
+    }
+
+    private CardView newCard() {
+        CardView card = new CardView(context);
+        card.setImageCache(imageCache);
+        card.setCard(FACE, FACE, BACK);
+        return card;
+    }
+
+    // 在后台解码一张图，主线程不停地处理消息，直到解码完成的回调执行过
+    private void preloadAndWait(int resId, CardView card) throws InterruptedException {
+        final boolean[] ready = {false};
+        imageCache.preloadOne(resId, readyId -> {
+            ready[0] = true;
+            if (card != null) {
+                card.onImageReady(readyId);
+            }
+        });
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!ready[0]) {
+            assertTrue("decode timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+            shadowOf(Looper.getMainLooper()).idle();
+        }
+    }
+}
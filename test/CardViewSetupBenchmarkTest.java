@@ -0,0 +1,126 @@
+package com.yao.memorytrain;
+
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.LooperMode;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Locale;
+
+import static org.junit.Assert.assertTrue;
+
+// 建卡片的基准测试：jmh/BoardBenchmarks里的JMH跑不了需要Android的CardView，这一项放在Robolectric里。
+// 测新建一张CardView并绑定（开新局、视图池不够时走这条路）和复用时重新绑定的平均耗时，
+// 结果按JMH的-rf json格式输出，可以和BoardBenchmarks的结果放在一起比较。
+// 给了-Dbenchmark.json=文件 时写到文件里，否则只打印。Robolectric里的绝对值偏大，只用来和上一次比
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class CardViewSetupBenchmarkTest {
+    private static final int FACE = R.drawable.card_front_ace1;
+    private static final int BACK = R.drawable.card_back;
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 10;
+    private static final int OPS_PER_ITERATION = 200;
+
+    // 一项操作，i是本轮里的序号
+    private interface Op {
+        Object run(int i);
+    }
+
+    private Context context;
+    private CardImageCache imageCache;
+    private final CardAnimationDriver driver = new CardAnimationDriver();
+    private final StringBuilder json = new StringBuilder();
+
+    @Before
+    public void setUp() {
+        context = new ContextThemeWrapper(ApplicationProvider.getApplicationContext(),
+                androidx.appcompat.R.style.Theme_AppCompat_Light);
+        imageCache = new CardImageCache(context.getResources());
+        imageCache.setTargetSize(120, 160);
+    }
+
+    @After
+    public void tearDown() {
+        imageCache.shutdown();
+    }
+
+    @Test
+    public void cardViewSetup() throws IOException {
+        json.append("[\n");
+        // 和FlipCardGameActivity.createCardView一样：新建、接上图片缓存和动画时钟、绑定牌面
+        measure("cardViewCreate", i -> {
+            CardView card = new CardView(context);
+            card.setImageCache(imageCache);
+            card.setAnimationDriver(driver);
+            card.setCard(FACE, FACE, BACK);
+            return card;
+        });
+        json.append(",\n");
+        final CardView[] pool = new CardView[OPS_PER_ITERATION];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = new CardView(context);
+            pool[i].setImageCache(imageCache);
+            pool[i].setAnimationDriver(driver);
+        }
+        // 开新局时视图池里的卡片只重新绑定
+        measure("cardViewRebind", i -> {
+            pool[i].setCard(FACE, FACE, BACK);
+            return pool[i];
+        });
+        json.append("\n]\n");
+
+        System.out.print(json);
+        String output = System.getProperty("benchmark.json");
+        if (output != null) {
+            try (FileWriter writer = new FileWriter(output)) {
+                writer.write(json.toString());
+            }
+        }
+    }
+
+    // 预热后测MEASURED_ITERATIONS轮，每轮OPS_PER_ITERATION次，按JMH的字段名追加一条平均耗时
+    private void measure(String name, Op op) {
+        Object sink = null;
+        for (int w = 0; w < WARMUP_ITERATIONS; w++) {
+            for (int i = 0; i < OPS_PER_ITERATION; i++) {
+                sink = op.run(i);
+            }
+        }
+        double[] nsPerOp = new double[MEASURED_ITERATIONS];
+        double sum = 0;
+        for (int m = 0; m < MEASURED_ITERATIONS; m++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < OPS_PER_ITERATION; i++) {
+                sink = op.run(i);
+            }
+            nsPerOp[m] = (System.nanoTime() - start) / (double) OPS_PER_ITERATION;
+            sum += nsPerOp[m];
+        }
+        assertTrue(sink != null);
+        double mean = sum / MEASURED_ITERATIONS;
+        double variance = 0;
+        StringBuilder raw = new StringBuilder();
+        for (int m = 0; m < MEASURED_ITERATIONS; m++) {
+            variance += (nsPerOp[m] - mean) * (nsPerOp[m] - mean);
+            raw.append(m == 0 ? "" : ", ").append(String.format(Locale.US, "%.1f", nsPerOp[m]));
+        }
+        // 和JMH一样，scoreError是99.9%置信区间的半宽，9个自由度时t值为4.781
+        double error = 4.781 * Math.sqrt(variance / (MEASURED_ITERATIONS - 1) / MEASURED_ITERATIONS);
+        json.append(String.format(Locale.US,
+                "  {\"benchmark\": \"com.yao.memorytrain.CardViewSetupBenchmarkTest.%s\", \"mode\": \"avgt\","
+                        + " \"warmupIterations\": %d, \"measurementIterations\": %d,"
+                        + " \"primaryMetric\": {\"score\": %.1f, \"scoreError\": %.1f, \"scoreUnit\": \"ns/op\","
+                        + " \"rawData\": [[%s]]}}",
+                name, WARMUP_ITERATIONS, MEASURED_ITERATIONS, mean, error, raw));
+    }
+}
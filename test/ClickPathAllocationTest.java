@@ -0,0 +1,159 @@
+package com.yao.memorytrain;
+
+import android.os.Looper;
+import android.view.View;
+import android.widget.Button;
+import android.widget.GridLayout;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Locale;
+
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+// 点击路径和计时器的内存分配预算，和AllocationBudget互补：那边只测engine和拼字，
+// 这里建出整个Activity，通过卡片的点击监听一局一局地玩完，暂停的主线程Looper和Choreographer手动推进，
+// 用线程分配计数器统计每回合两次点击、每次计时器跳秒在主线程上分配的字节数。
+// 动画每帧的绘制是框架的开销，不算进预算；测量值打印出来，改动后可以对照着收紧预算
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class ClickPathAllocationTest {
+    private static final Duration FRAME = Duration.ofMillis(16);
+    private static final int QUIET_FRAMES = 10; // 连续这么多帧没有卡片在动画，这一回合才算结束
+    private static final int WARMUP_GAMES = 3;
+    private static final int MEASURED_GAMES = 10;
+    private static final int TICK_SECONDS = 20;
+    // debug构建里点击会打日志，拼日志字符串和ShadowLog记录的开销也算在里面
+    private static final long TURN_BUDGET = 8 * 1024;
+    // 跳秒时改一次时间文字，TextView重新排版的开销算在里面
+    private static final long TICK_BUDGET = 4 * 1024;
+
+    private ActivityController<FlipCardGameActivity> controller;
+    private ShadowLooper looper;
+    private GridLayout grid;
+    private Button restart;
+    private com.sun.management.ThreadMXBean threadBean;
+
+    @Before
+    public void setUp() {
+        assertTrue("thread allocation counter not supported",
+                ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        looper = shadowOf(Looper.getMainLooper());
+        controller = Robolectric.buildActivity(FlipCardGameActivity.class).setup();
+        FlipCardGameActivity activity = controller.get();
+        grid = activity.findViewById(R.id.game_grid_layout);
+        restart = activity.findViewById(R.id.btn_restart);
+        settle(); // 首帧之后才开局，棋盘分几帧建好
+    }
+
+    @After
+    public void tearDown() {
+        controller.pause().stop().destroy();
+    }
+
+    @Test
+    public void clickPathWithinBudget() {
+        for (int i = 0; i < WARMUP_GAMES; i++) {
+            playGame(new long[2]);
+        }
+        long[] totals = new long[2]; // 点击分配的字节数、回合数
+        for (int i = 0; i < MEASURED_GAMES; i++) {
+            playGame(totals);
+        }
+        long perTurn = totals[0] / totals[1];
+        System.out.println(String.format(Locale.US, "click path: turns=%d bytes_per_turn=%d budget=%d",
+                totals[1], perTurn, TURN_BUDGET));
+        assertTrue("click path allocated " + perTurn + " bytes per turn", perTurn <= TURN_BUDGET);
+    }
+
+    // 新开一局什么也不点，计时器每秒跳一次；和结束后计时器停了的一局空转同样久，相减得到跳秒本身的开销
+    @Test
+    public void clockTickWithinBudget() {
+        playGame(new long[2]);
+        long idle = allocatedDuring(Duration.ofSeconds(TICK_SECONDS));
+
+        restart.performClick();
+        settle();
+        long ticking = allocatedDuring(Duration.ofSeconds(TICK_SECONDS));
+
+        long perTick = Math.max(0, ticking - idle) / TICK_SECONDS;
+        System.out.println(String.format(Locale.US, "clock tick: ticks=%d bytes_per_tick=%d budget=%d",
+                TICK_SECONDS, perTick, TICK_BUDGET));
+        assertTrue("clock tick allocated " + perTick + " bytes", perTick <= TICK_BUDGET);
+    }
+
+    // 开一局并玩完：依次试每两张还在的牌，没配上的翻回去再试下一对。
+    // totals[0]累加两次点击期间的分配，totals[1]累加回合数
+    private void playGame(long[] totals) {
+        restart.performClick();
+        settle();
+        int total = grid.getChildCount();
+        for (int first = 0; first < total; first++) {
+            for (int second = first + 1; second < total && !isMatched(first); second++) {
+                if (isMatched(second)) {
+                    continue;
+                }
+                long before = allocatedBytes();
+                grid.getChildAt(first).performClick();
+                grid.getChildAt(second).performClick();
+                totals[0] += allocatedBytes() - before;
+                totals[1]++;
+                assertTrue("click ignored at " + first, card(first).isAnimating() || card(first).isFront());
+                settle();
+            }
+        }
+        for (int i = 0; i < total; i++) {
+            assertTrue("card " + i + " not matched", isMatched(i));
+        }
+    }
+
+    private boolean isMatched(int index) {
+        return card(index).getVisibility() == View.INVISIBLE;
+    }
+
+    private CardView card(int index) {
+        return (CardView) grid.getChildAt(index);
+    }
+
+    // 按帧推进，直到连续QUIET_FRAMES帧没有卡片在动画。判定和消失动画在翻牌结束后的帧里才开始，所以要多等几帧
+    private void settle() {
+        int quiet = 0;
+        while (quiet < QUIET_FRAMES) {
+            looper.idleFor(FRAME);
+            quiet = isAnyAnimating() ? 0 : quiet + 1;
+        }
+    }
+
+    private boolean isAnyAnimating() {
+        for (int i = 0; i < grid.getChildCount(); i++) {
+            if (card(i).isAnimating()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long allocatedDuring(Duration duration) {
+        long before = allocatedBytes();
+        looper.idleFor(duration);
+        return allocatedBytes() - before;
+    }
+
+    private long allocatedBytes() {
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,161 @@
+package com.yao.memorytrain;
+
+import android.view.Choreographer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// 用手动推进的假帧时钟驱动FrameStatsMonitor，不需要真的Choreographer
+public class FrameStatsMonitorTest {
+    private static final long FRAME_NANOS = 16_666_667L;
+
+    private FakeFrameScheduler frames;
+    private FrameStatsMonitor monitor;
+
+    @Before
+    public void setUp() {
+        frames = new FakeFrameScheduler();
+        monitor = new FrameStatsMonitor(frames);
+        monitor.setRefreshRate(60f);
+        monitor.reset(4, 3);
+    }
+
+    @Test
+    public void percentilesAndJankPerType() {
+        monitor.animationStarted(FrameStatsMonitor.TYPE_FLIP);
+        frames.advance(0);
+        // 100个间隔：90个正常帧，10个卡顿帧（40ms）
+        for (int i = 0; i < 90; i++) {
+            frames.advance(FRAME_NANOS);
+        }
+        for (int i = 0; i < 10; i++) {
+            frames.advance(40_000_000L);
+        }
+        monitor.animationEnded(FrameStatsMonitor.TYPE_FLIP);
+        frames.advance(FRAME_NANOS); // 动画已经结束，这一帧不记录，之后不再请求帧回调
+        assertFalse(frames.hasCallback());
+
+        assertEquals(100, monitor.getSampleCount(FrameStatsMonitor.TYPE_FLIP));
+        assertEquals(16.67, monitor.getPercentileMillis(FrameStatsMonitor.TYPE_FLIP, 50), 0.01);
+        assertEquals(40.0, monitor.getPercentileMillis(FrameStatsMonitor.TYPE_FLIP, 95), 0.01);
+        assertEquals(40.0, monitor.getPercentileMillis(FrameStatsMonitor.TYPE_FLIP, 99), 0.01);
+        assertEquals(10, monitor.getJankCount(FrameStatsMonitor.TYPE_FLIP));
+        assertEquals(0, monitor.getSampleCount(FrameStatsMonitor.TYPE_VANISH));
+    }
+
+    @Test
+    public void overlappingAnimationsCountedForEachType() {
+        monitor.animationStarted(FrameStatsMonitor.TYPE_FLIP_BACK);
+        frames.advance(0);
+        frames.advance(FRAME_NANOS);
+        monitor.animationStarted(FrameStatsMonitor.TYPE_VANISH);
+        frames.advance(50_000_000L); // 两种动画同时进行时卡了一帧
+        monitor.animationEnded(FrameStatsMonitor.TYPE_FLIP_BACK);
+        frames.advance(FRAME_NANOS);
+        monitor.animationEnded(FrameStatsMonitor.TYPE_VANISH);
+        frames.advance(FRAME_NANOS);
+
+        assertEquals(2, monitor.getSampleCount(FrameStatsMonitor.TYPE_FLIP_BACK));
+        assertEquals(1, monitor.getJankCount(FrameStatsMonitor.TYPE_FLIP_BACK));
+        assertEquals(2, monitor.getSampleCount(FrameStatsMonitor.TYPE_VANISH));
+        assertEquals(1, monitor.getJankCount(FrameStatsMonitor.TYPE_VANISH));
+        assertEquals(16.67, monitor.getPercentileMillis(FrameStatsMonitor.TYPE_VANISH, 50), 0.01);
+        assertEquals(50.0, monitor.getPercentileMillis(FrameStatsMonitor.TYPE_VANISH, 99), 0.01);
+    }
+
+    // 暂停期间的间隔不能算成一个超长的卡顿帧
+    @Test
+    public void pauseDropsTheGap() {
+        monitor.animationStarted(FrameStatsMonitor.TYPE_APPEAR);
+        frames.advance(0);
+        frames.advance(FRAME_NANOS);
+        monitor.pause();
+        assertFalse(frames.hasCallback());
+        frames.skip(5_000_000_000L);
+        monitor.resume();
+        frames.advance(FRAME_NANOS);
+        frames.advance(FRAME_NANOS);
+
+        assertEquals(2, monitor.getSampleCount(FrameStatsMonitor.TYPE_APPEAR));
+        assertEquals(0, monitor.getJankCount(FrameStatsMonitor.TYPE_APPEAR));
+    }
+
+    @Test
+    public void exportAppendsOneRowPerType() throws IOException {
+        monitor.animationStarted(FrameStatsMonitor.TYPE_FLIP);
+        frames.advance(0);
+        frames.advance(FRAME_NANOS);
+        File file = File.createTempFile("frame_stats", ".csv");
+        assertTrue(file.delete());
+        try {
+            monitor.export(file, Runnable::run);
+            monitor.export(file, Runnable::run);
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            assertEquals(1 + 2 * 4, lines.size()); // 只有第一次写表头
+            assertTrue(lines.get(0).startsWith("timestamp,"));
+            assertTrue(lines.get(1).contains(",4,3,flip,1,"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    // 换局和退出时导出后清空，正在进行的动画继续采样，导出过的帧不会再写一次
+    @Test
+    public void clearSamplesKeepsActiveAnimation() {
+        assertFalse(monitor.hasSamples());
+        monitor.animationStarted(FrameStatsMonitor.TYPE_VANISH);
+        frames.advance(0);
+        frames.advance(FRAME_NANOS);
+        assertTrue(monitor.hasSamples());
+
+        monitor.clearSamples();
+        assertFalse(monitor.hasSamples());
+        frames.advance(FRAME_NANOS);
+        assertEquals(1, monitor.getSampleCount(FrameStatsMonitor.TYPE_VANISH));
+    }
+
+    // 每次advance()把时间往前推，执行一次已经请求的帧回调
+    private static final class FakeFrameScheduler implements FrameStatsMonitor.FrameScheduler {
+        private Choreographer.FrameCallback callback;
+        private long nowNanos = 1_000_000_000L;
+
+        @Override
+        public void postFrameCallback(Choreographer.FrameCallback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void removeFrameCallback(Choreographer.FrameCallback callback) {
+            if (this.callback == callback) {
+                this.callback = null;
+            }
+        }
+
+        boolean hasCallback() {
+            return callback != null;
+        }
+
+        void skip(long nanos) {
+            nowNanos += nanos;
+        }
+
+        void advance(long nanos) {
+            nowNanos += nanos;
+            Choreographer.FrameCallback pending = callback;
+            callback = null;
+            if (pending != null) {
+                pending.doFrame(nowNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.yao.memorytrain;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// 按界面上的顺序驱动engine并写操作记录，再用ReplayRunner回放，核对回放出的棋盘和实际一致
+public class ReplayRunnerTest {
+    private static final int COLUMNS = 4;
+    private static final int ROWS = 3;
+
+    private BoardEngine game;
+    private ReplayLog.Writer writer;
+
+    @Test
+    public void replaysClassicGame() throws IOException {
+        ByteArrayOutputStream out = start(7, false);
+        while (!game.isGameOver()) {
+            int first = firstHidden(-1);
+            tap(first);
+            tap(partnerOf(first));
+            resolve();
+        }
+        writer.finish(game.getMatchedPairsCount(), game.getClickCount());
+
+        ReplayLog.Recording recording = ReplayLog.read(new ByteArrayInputStream(out.toByteArray()));
+        assertTrue(recording.finished);
+        assertTrue(ReplayRunner.replay(new BoardEngine(), recording, new Random()));
+    }
+
+    // 界面上要等翻牌动画结束才判定，上一对的消失动画可能在这期间结束并补牌。
+    // 补牌避开的是上一次没配上的两张，回放也必须在同样的时机判定，否则交换的格子不一样
+    @Test
+    public void replaysRefillBetweenSelectAndResolve() throws IOException {
+        for (long seed = 1; seed <= 200; seed++) {
+            ByteArrayOutputStream out = start(seed, true);
+            // 先没配上一次，让engine记住要避开的两张
+            int x = firstHidden(-1);
+            int y = mismatchOf(x);
+            tap(x);
+            tap(y);
+            resolve();
+            // 配上一对，先不补牌，等于消失动画还没结束
+            int a = firstHiddenExcept(x, y);
+            tap(a);
+            tap(partnerOf(a));
+            resolve();
+            // 下一回合翻开两张不同的牌，判定前上一对的动画结束，补牌
+            int b = firstHiddenExcept(x, y);
+            int c = mismatchOf(b);
+            tap(b);
+            tap(c);
+            writer.refill(a);
+            game.refill(a);
+            resolve();
+            writer.finish(game.getMatchedPairsCount(), game.getClickCount());
+
+            ReplayLog.Recording recording = ReplayLog.read(new ByteArrayInputStream(out.toByteArray()));
+            BoardEngine replayed = new BoardEngine();
+            assertTrue("seed " + seed, ReplayRunner.replay(replayed, recording, new Random()));
+            assertArrayEquals("seed " + seed, faces(game), faces(replayed));
+        }
+    }
+
+    @Test
+    public void readsResolveRecords() throws IOException {
+        ByteArrayOutputStream out = start(3, false);
+        int first = firstHidden(-1);
+        tap(first);
+        tap(mismatchOf(first));
+        resolve();
+        writer.finish(game.getMatchedPairsCount(), game.getClickCount());
+
+        ReplayLog.Recording recording = ReplayLog.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(3, recording.clickCount);
+        assertEquals(first, recording.clickIndices[0]);
+        assertEquals(ReplayLog.RESOLVE, recording.clickIndices[2]);
+        assertEquals(2, recording.expectedClickCount);
+    }
+
+    private ByteArrayOutputStream start(long seed, boolean endless) throws IOException {
+        int[] pool = new int[18];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = i + 1;
+        }
+        game = new BoardEngine();
+        game.newGame(COLUMNS, ROWS, pool, new Random(seed), endless);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer = new ReplayLog.Writer(out, seed, COLUMNS, ROWS, pool, endless, 0);
+        return out;
+    }
+
+    private void tap(int index) throws IOException {
+        assertTrue(game.select(index) != BoardEngine.SELECT_IGNORED);
+        writer.click(index, 0);
+    }
+
+    private void resolve() throws IOException {
+        writer.resolve();
+        game.resolve();
+    }
+
+    private int firstHidden(int except) {
+        return firstHiddenExcept(except, except);
+    }
+
+    private int firstHiddenExcept(int except1, int except2) {
+        for (int i = 0; i < game.getTotalCards(); i++) {
+            if (i != except1 && i != except2 && game.getState(i) == BoardEngine.STATE_HIDDEN) {
+                return i;
+            }
+        }
+        throw new AssertionError("no hidden card");
+    }
+
+    private int partnerOf(int index) {
+        for (int i = 0; i < game.getTotalCards(); i++) {
+            if (i != index && game.getFace(i) == game.getFace(index)) {
+                return i;
+            }
+        }
+        throw new AssertionError("no partner for " + index);
+    }
+
+    private int mismatchOf(int index) {
+        for (int i = 0; i < game.getTotalCards(); i++) {
+            if (game.getState(i) == BoardEngine.STATE_HIDDEN && game.getFace(i) != game.getFace(index)) {
+                return i;
+            }
+        }
+        throw new AssertionError("no mismatch for " + index);
+    }
+
+    private static int[] faces(BoardEngine engine) {
+        return Arrays.copyOf(engine.getFaces(), engine.getTotalCards());
+    }
+}
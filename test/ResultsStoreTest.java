@@ -0,0 +1,149 @@
+package com.yao.memorytrain;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResultsStoreTest {
+    private static final int HEADER_SIZE = 8;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("results", ".bin");
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void appendAndReloadRebuildsSummary() throws IOException {
+        ResultsStore store = new ResultsStore(file);
+        store.open();
+        store.append(result(4, 3, 20, 30_000, 1));
+        store.append(result(4, 3, 16, 45_000, 2));
+        store.append(result(6, 5, 50, 90_000, 3));
+        store.close();
+
+        ResultsStore reopened = new ResultsStore(file);
+        reopened.open();
+        assertEquals(3, reopened.getRecordCount());
+        ResultsStore.LevelSummary summary = reopened.getSummary(4, 3);
+        assertEquals(2, summary.gameCount);
+        assertEquals(16, summary.fewestClicks);
+        assertEquals(30_000, summary.bestTimeMillis);
+        assertEquals(36, summary.totalClicks);
+        assertEquals(1, reopened.getSummary(6, 5).gameCount);
+        assertNull(reopened.getSummary(5, 4));
+        assertEquals(2, reopened.getSummaries().size());
+
+        List<ResultsStore.Result> recent = reopened.getRecent(4, 3, 10);
+        assertEquals(2, recent.size());
+        assertEquals(2, recent.get(0).seed); // 最新的在前
+        assertEquals(1, recent.get(1).seed);
+
+        // 重新打开后继续追加，接在已有记录后面
+        reopened.append(result(4, 3, 12, 60_000, 4));
+        assertEquals(3, reopened.getSummary(4, 3).gameCount);
+        reopened.close();
+        assertEquals(HEADER_SIZE + 4 * ResultsStore.RECORD_SIZE, file.length());
+    }
+
+    // 写到一半被杀掉：尾部不完整的记录在打开时截掉，前面的记录不受影响
+    @Test
+    public void truncatesTornTail() throws IOException {
+        ResultsStore store = new ResultsStore(file);
+        store.open();
+        store.append(result(4, 3, 20, 30_000, 1));
+        store.append(result(4, 3, 18, 25_000, 2));
+        store.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() + ResultsStore.RECORD_SIZE / 2);
+        }
+
+        ResultsStore reopened = new ResultsStore(file);
+        reopened.open();
+        assertEquals(2, reopened.getRecordCount());
+        assertEquals(HEADER_SIZE + 2 * ResultsStore.RECORD_SIZE, file.length());
+        reopened.append(result(4, 3, 14, 20_000, 3));
+        assertEquals(3, reopened.getSummary(4, 3).gameCount);
+        reopened.close();
+    }
+
+    // CRC不对的记录和它后面的都不可信，打开时一起截掉，汇总只算前面的
+    @Test
+    public void dropsRecordsFromFirstCrcMismatch() throws IOException {
+        ResultsStore store = new ResultsStore(file);
+        store.open();
+        store.append(result(4, 3, 20, 30_000, 1));
+        store.append(result(4, 3, 10, 10_000, 2));
+        store.append(result(4, 3, 12, 12_000, 3));
+        store.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long clicksOffset = HEADER_SIZE + ResultsStore.RECORD_SIZE + 4; // 第二条记录的点击次数
+            raf.seek(clicksOffset);
+            raf.writeInt(9);
+        }
+
+        ResultsStore reopened = new ResultsStore(file);
+        reopened.open();
+        assertEquals(1, reopened.getRecordCount());
+        ResultsStore.LevelSummary summary = reopened.getSummary(4, 3);
+        assertEquals(1, summary.gameCount);
+        assertEquals(20, summary.fewestClicks);
+        assertEquals(HEADER_SIZE + ResultsStore.RECORD_SIZE, file.length());
+        reopened.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsForeignFile() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.writeInt(0x12345678);
+            raf.writeInt(1);
+        }
+        new ResultsStore(file).open();
+    }
+
+    // 旋转屏幕时新旧Activity拿到的是同一个实例，追加不会互相覆盖
+    @Test
+    public void sharedInstancePerFile() throws IOException {
+        ResultsStore first = ResultsStore.shared(file);
+        ResultsStore second = ResultsStore.shared(new File(file.getPath()));
+        assertTrue(first == second);
+        first.open();
+        second.open();
+        first.append(result(4, 3, 20, 30_000, 1));
+        second.append(result(4, 3, 18, 25_000, 2));
+        assertEquals(2, second.getRecordCount());
+        first.close();
+
+        ResultsStore reopened = new ResultsStore(file);
+        reopened.open();
+        assertEquals(2, reopened.getRecordCount());
+        reopened.close();
+    }
+
+    private static ResultsStore.Result result(int columns, int rows, int clicks, long timeMillis, long seed) {
+        ResultsStore.Result result = new ResultsStore.Result();
+        result.columnCount = columns;
+        result.rowCount = rows;
+        result.clickCount = clicks;
+        result.timeMillis = timeMillis;
+        result.seed = seed;
+        result.timestamp = 1_700_000_000_000L + seed;
+        return result;
+    }
+}